@@ -1,11 +1,16 @@
+import java.util.Comparator;
 import java.util.Scanner;
 
 /**
  * Main entry point for running the iSongify app.
+ *
+ * Usage: java App [tree]
+ * where tree selects the collection that stores the songs: redblack
+ * (the default), array, bplus, persistent, concurrent, bucketed or augmented.
  */
 public class App {
     public static void main(String[] args) {
-	IterableSortedCollection<SongInterface> tree = new IterableRedBlackTree<>(); 
+	IterableSortedCollection<SongInterface> tree = createTree(args.length > 0 ? args[0] : "redblack");
 	BackendInterface backend = new Backend(tree);
 	Scanner in = new Scanner(System.in);
 	FrontendInterface frontend = new Frontend(in,backend);
@@ -19,4 +24,31 @@ public class App {
 	System.out.println("===================");
 	System.out.println("Thanks, and Goodbye");
     }
+
+    /**
+     * Creates the collection that the backend stores songs in.
+     * @param name is redblack, array, bplus, persistent, concurrent, bucketed or augmented
+     * @return a new, empty collection of the selected kind
+     * @throws IllegalArgumentException when name is not one of these
+     */
+    public static IterableSortedCollection<SongInterface> createTree(String name) {
+	switch (name) {
+	case "redblack":
+	    return new IterableRedBlackTree<>();
+	case "array":
+	    return new ArrayRedBlackTree<>();
+	case "bplus":
+	    return new BPlusTree<>();
+	case "persistent":
+	    return new PersistentRedBlackTree<>();
+	case "concurrent":
+	    return new ConcurrentSortedCollection<>();
+	case "bucketed":
+	    return BucketedRedBlackTree.groupedBy(Comparator.comparingInt(SongInterface::getBPM));
+	case "augmented":
+	    return new AugmentedSongTree();
+	default:
+	    throw new IllegalArgumentException("Unknown tree: " + name + " (expected redblack, array, bplus, persistent, concurrent, bucketed or augmented)");
+	}
+    }
 }
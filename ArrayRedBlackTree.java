@@ -0,0 +1,597 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Red-black tree that keeps its nodes in parallel arrays instead of node
+ * objects. A node is an index into these arrays: left, right and up hold the
+ * indices of its children and parent (NIL when missing), a bitset holds its
+ * color, and data holds its value. Nodes always occupy the indices
+ * [0, size()), so every value costs a few array slots and no extra objects.
+ *
+ * Inserting, removing and iterating follow the same rules as
+ * IterableRedBlackTree: values equal to an existing value are inserted before
+ * it, and iterators find each successor through the up references.
+ */
+public class ArrayRedBlackTree<T extends Comparable<T>> implements IterableSortedCollection<T> {
+
+    // index used in place of a null node reference
+    private static final int NIL = -1;
+
+    // the arrays always grow by a multiple of this many nodes
+    private static final int CHUNK_SIZE = 1024;
+
+    private int[] left = new int[0];
+    private int[] right = new int[0];
+    private int[] up = new int[0];
+    private long[] black = new long[0]; // bit i is set when node i is black
+    private Object[] data = new Object[0];
+
+    private int root = NIL; // index of root node of tree, NIL when empty
+    private int size = 0; // the number of values in the tree
+    private int modificationCount = 0;
+
+    private Comparable<T> iterationStartPoint = null;
+
+    /**
+     * Inserts a new data value into the tree, and then restores the red-black
+     * tree properties. Values equal to values in the tree are allowed.
+     * @param value to be added into this tree
+     * @return true, as every value is inserted
+     * @throws NullPointerException when the provided value is null
+     */
+    public boolean insert(T value) throws NullPointerException {
+        if (value == null)
+            throw new NullPointerException("Cannot insert data value null into the tree.");
+        ensureCapacity(size + 1);
+        int node = size++;
+        modificationCount++;
+        data[node] = value;
+        left[node] = NIL;
+        right[node] = NIL;
+        setBlack(node, false);
+
+        if (root == NIL) {
+            root = node;
+            up[node] = NIL;
+        } else {
+            int current = root;
+            while (true) {
+                int[] side = value.compareTo(get(current)) <= 0 ? left : right;
+                if (side[current] == NIL) {
+                    side[current] = node;
+                    up[node] = current;
+                    break;
+                }
+                current = side[current];
+            }
+        }
+        enforceRBTreePropertiesAfterInsert(node);
+        setBlack(root, true);
+        return true;
+    }
+
+    /**
+     * Inserts every value of data by merging the sorted values with the values
+     * of the tree, and then rebuilding the arrays so that the index of every
+     * node is its position in order. In-order scans then read the arrays front
+     * to back.
+     * @param values are the values to insert
+     * @throws NullPointerException when data or any of its values is null
+     */
+    @Override
+    public void insertAll(Collection<? extends T> values) throws NullPointerException {
+        Object[] batch = values.toArray();
+        for (Object value : batch) {
+            if (value == null)
+                throw new NullPointerException("Cannot insert data value null into the tree.");
+        }
+        Arrays.sort(batch);
+        IterableRedBlackTree.reverseEqualRuns(batch);
+
+        // Merges the current values (in order) with the sorted batch
+        Object[] merged = new Object[size + batch.length];
+        int current = leftmost(root);
+        int j = 0;
+        int k = 0;
+        while (current != NIL || j < batch.length) {
+            if (j < batch.length && (current == NIL || compare(batch[j], get(current)) <= 0)) {
+                merged[k++] = batch[j++];
+            } else {
+                merged[k++] = data[current];
+                current = successor(current);
+            }
+        }
+
+        clear();
+        ensureCapacity(merged.length);
+        System.arraycopy(merged, 0, data, 0, merged.length);
+        size = merged.length;
+        modificationCount++;
+        // only the deepest level, the one that can be incomplete, is red
+        int redDepth = 31 - Integer.numberOfLeadingZeros(Math.max(size, 1));
+        root = buildBalanced(0, size - 1, 0, redDepth, NIL);
+    }
+
+    /**
+     * Links the nodes [from, to], whose values are already in place, into a
+     * balanced subtree.
+     * @return the index of the root of the subtree, or NIL when it is empty
+     */
+    private int buildBalanced(int from, int to, int depth, int redDepth, int parent) {
+        if (from > to) {
+            return NIL;
+        }
+        int middle = (from + to) >>> 1;
+        up[middle] = parent;
+        setBlack(middle, depth == 0 || depth != redDepth);
+        left[middle] = buildBalanced(from, middle - 1, depth + 1, redDepth, middle);
+        right[middle] = buildBalanced(middle + 1, to, depth + 1, redDepth, middle);
+        return middle;
+    }
+
+    /**
+     * Resolves any red property violations that are introduced by inserting a new node
+     * into the tree, like RedBlackTree.enforceRBTreePropertiesAfterInsert()
+     * @param node is the index of the new red node
+     */
+    private void enforceRBTreePropertiesAfterInsert(int node) {
+        while (node != root && !isBlack(up[node])) {
+            int parent = up[node];
+            int grandparent = up[parent]; // exists, since a red parent is never the root
+            boolean parentIsLeftChild = left[grandparent] == parent;
+            int aunt = parentIsLeftChild ? right[grandparent] : left[grandparent];
+
+            // Case 1: Red Aunt Case
+            if (!isBlack(aunt)) {
+                setBlack(parent, true);
+                setBlack(aunt, true);
+                setBlack(grandparent, false);
+                node = grandparent;
+                continue;
+            }
+
+            // Case 2: Black Aunt, new node is on the inside, rotate it to the outside
+            if ((right[parent] == node) == parentIsLeftChild) {
+                rotate(node, parent);
+                parent = node;
+            }
+
+            // Case 3: Black Aunt, new node is on the outside
+            rotate(parent, grandparent);
+            setBlack(parent, true);
+            setBlack(grandparent, false);
+            return;
+        }
+    }
+
+    /**
+     * Removes one value that is equal to data from the tree, and then restores
+     * the red-black tree properties. The last node of the arrays is moved into
+     * the freed index, so that the nodes stay at the indices [0, size()).
+     * @param key a comparable for the data value to remove
+     * @return true if a value was removed, false if no such value was in the tree
+     * @throws NullPointerException when the provided key is null
+     */
+    public boolean remove(Comparable<T> key) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("This tree cannot store null references.");
+        int node = findNode(key);
+        if (node == NIL) {
+            return false;
+        }
+        if (left[node] != NIL && right[node] != NIL) {
+            // takes over the successor's value, and removes the successor instead
+            int successor = leftmost(right[node]);
+            data[node] = data[successor];
+            node = successor;
+        }
+
+        int child = left[node] != NIL ? left[node] : right[node];
+        if (child != NIL) {
+            setBlack(child, true);
+        } else if (isBlack(node)) {
+            enforceRBTreePropertiesBeforeRemove(node);
+        }
+        replaceNode(node, child);
+        moveLastNodeTo(node);
+        modificationCount++;
+        return true;
+    }
+
+    /**
+     * Resolves the missing black node that removing the black leaf node would
+     * leave on its paths, like RedBlackTree.enforceRBTreePropertiesBeforeRemove()
+     * @param node is the index of the black leaf that is about to be removed
+     */
+    private void enforceRBTreePropertiesBeforeRemove(int node) {
+        int doubleBlack = node;
+        while (doubleBlack != root && isBlack(doubleBlack)) {
+            int parent = up[doubleBlack];
+            boolean isLeftChild = left[parent] == doubleBlack;
+            int sibling = isLeftChild ? right[parent] : left[parent];
+
+            // Case 1: Red Sibling
+            if (!isBlack(sibling)) {
+                setBlack(sibling, true);
+                setBlack(parent, false);
+                rotate(sibling, parent);
+                sibling = isLeftChild ? right[parent] : left[parent];
+            }
+
+            int nearNephew = isLeftChild ? left[sibling] : right[sibling];
+            int farNephew = isLeftChild ? right[sibling] : left[sibling];
+
+            // Case 2: Black Sibling with black children
+            if (isBlack(nearNephew) && isBlack(farNephew)) {
+                setBlack(sibling, false);
+                doubleBlack = parent;
+                continue;
+            }
+
+            // Case 3: Black Sibling with red near child
+            if (isBlack(farNephew)) {
+                setBlack(nearNephew, true);
+                setBlack(sibling, false);
+                rotate(nearNephew, sibling);
+                farNephew = sibling;
+                sibling = nearNephew;
+            }
+
+            // Case 4: Black Sibling with red far child
+            setBlack(sibling, isBlack(parent));
+            setBlack(parent, true);
+            setBlack(farNephew, true);
+            rotate(sibling, parent);
+            return;
+        }
+        setBlack(doubleBlack, true);
+    }
+
+    /**
+     * Rotates child into the position of parent, like BinarySearchTree.rotate()
+     * @throws IllegalArgumentException when child is not a child of parent
+     */
+    private void rotate(int child, int parent) throws IllegalArgumentException {
+        if (child == NIL || parent == NIL || up[child] != parent) {
+            throw new IllegalArgumentException("The provided nodes are not related as parent and child.");
+        }
+        int grandparent = up[parent];
+        if (left[parent] == child) {
+            // rotate right
+            left[parent] = right[child];
+            if (right[child] != NIL) up[right[child]] = parent;
+            right[child] = parent;
+        } else {
+            // rotate left
+            right[parent] = left[child];
+            if (left[child] != NIL) up[left[child]] = parent;
+            left[child] = parent;
+        }
+        up[parent] = child;
+        replaceChild(grandparent, parent, child);
+        up[child] = grandparent;
+    }
+
+    /**
+     * Puts replacement (which may be NIL) in the position of node.
+     */
+    private void replaceNode(int node, int replacement) {
+        if (replacement != NIL) {
+            up[replacement] = up[node];
+        }
+        replaceChild(up[node], node, replacement);
+        up[node] = NIL;
+    }
+
+    /**
+     * Makes replacement the child of parent that oldChild was, or the root when
+     * parent is NIL.
+     */
+    private void replaceChild(int parent, int oldChild, int replacement) {
+        if (parent == NIL) {
+            root = replacement;
+        } else if (left[parent] == oldChild) {
+            left[parent] = replacement;
+        } else {
+            right[parent] = replacement;
+        }
+    }
+
+    /**
+     * Moves the node at the last index into the unlinked index free, and
+     * shrinks the tree by one index.
+     */
+    private void moveLastNodeTo(int free) {
+        int last = --size;
+        if (free != last) {
+            data[free] = data[last];
+            left[free] = left[last];
+            right[free] = right[last];
+            up[free] = up[last];
+            setBlack(free, isBlack(last));
+            replaceChild(up[last], last, free);
+            if (left[free] != NIL) up[left[free]] = free;
+            if (right[free] != NIL) up[right[free]] = free;
+        }
+        data[last] = null;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= data.length) {
+            return;
+        }
+        // grows by at least half of the current capacity, rounded up to whole chunks
+        int grown = Math.max(capacity, data.length + (data.length >> 1));
+        grown = (int) Math.min(Integer.MAX_VALUE - 8L, ((long) grown + CHUNK_SIZE - 1) / CHUNK_SIZE * CHUNK_SIZE);
+        left = Arrays.copyOf(left, grown);
+        right = Arrays.copyOf(right, grown);
+        up = Arrays.copyOf(up, grown);
+        black = Arrays.copyOf(black, (grown + 63) >>> 6);
+        data = Arrays.copyOf(data, grown);
+    }
+
+    private boolean isBlack(int node) {
+        return node == NIL || (black[node >>> 6] & (1L << node)) != 0;
+    }
+
+    private void setBlack(int node, boolean isBlack) {
+        if (isBlack) {
+            black[node >>> 6] |= 1L << node;
+        } else {
+            black[node >>> 6] &= ~(1L << node);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T get(int node) {
+        return (T) data[node];
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object value, T other) {
+        return ((T) value).compareTo(other);
+    }
+
+    private int findNode(Comparable<T> key) {
+        int current = root;
+        while (current != NIL) {
+            int compare = key.compareTo(get(current));
+            if (compare == 0) {
+                return current;
+            }
+            current = compare < 0 ? left[current] : right[current];
+        }
+        return NIL;
+    }
+
+    private int leftmost(int node) {
+        if (node == NIL) {
+            return NIL;
+        }
+        while (left[node] != NIL) {
+            node = left[node];
+        }
+        return node;
+    }
+
+    private int successor(int node) {
+        if (right[node] != NIL) {
+            return leftmost(right[node]);
+        }
+        while (up[node] != NIL && right[up[node]] == node) {
+            node = up[node];
+        }
+        return up[node];
+    }
+
+    public boolean contains(Comparable<T> key) {
+        if (key == null) {
+            throw new NullPointerException("This tree cannot store null references.");
+        }
+        return findNode(key) != NIL;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int modificationCount() {
+        return modificationCount;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all values from the tree, keeping the arrays for reuse.
+     */
+    public void clear() {
+        Arrays.fill(data, 0, size, null);
+        root = NIL;
+        size = 0;
+        modificationCount++;
+    }
+
+    public void setIterationStartPoint(Comparable<T> startPoint) {
+        iterationStartPoint = startPoint;
+    }
+
+    public Iterator<T> iterator() {
+        return rangeIterator(iterationStartPoint, true, null, true);
+    }
+
+    /**
+     * Returns an iterator over the values between lowerBound and upperBound,
+     * which steps from node to node through the up references.
+     * @param lowerBound is the lower end of the range, null for no lower end
+     * @param lowerInclusive is true when values equal to lowerBound are included
+     * @param upperBound is the upper end of the range, null for no upper end
+     * @param upperInclusive is true when values equal to upperBound are included
+     * @return an iterator over the values in the range
+     */
+    public Iterator<T> rangeIterator(Comparable<T> lowerBound, boolean lowerInclusive,
+                                     Comparable<T> upperBound, boolean upperInclusive) {
+        // Descends to the smallest node that is not below the range
+        int first = NIL;
+        int node = root;
+        while (node != NIL) {
+            int compare = lowerBound == null ? -1 : lowerBound.compareTo(get(node));
+            if (compare > 0 || (compare == 0 && !lowerInclusive)) {
+                node = right[node];
+            } else {
+                first = node;
+                node = left[node];
+            }
+        }
+        int start = first;
+        return new Iterator<T>() {
+            private int nextNode = isAboveRange(start) ? NIL : start;
+
+            private boolean isAboveRange(int node) {
+                if (node == NIL || upperBound == null) {
+                    return false;
+                }
+                int compare = upperBound.compareTo(get(node));
+                return compare < 0 || (compare == 0 && !upperInclusive);
+            }
+
+            public boolean hasNext() {
+                return nextNode != NIL;
+            }
+
+            public T next() {
+                if (nextNode == NIL) {
+                    throw new NoSuchElementException();
+                }
+                T value = get(nextNode);
+                nextNode = successor(nextNode);
+                if (isAboveRange(nextNode)) {
+                    nextNode = NIL;
+                }
+                return value;
+            }
+        };
+    }
+
+    /**
+     * Checks that the arrays form a valid red-black tree, like
+     * RedBlackTree.validateRBTree()
+     * @return the black height of the tree (0 when the tree is empty)
+     * @throws IllegalStateException describing the first violation found
+     */
+    public int validateRBTree() throws IllegalStateException {
+        if (root == NIL) {
+            return 0;
+        }
+        if (up[root] != NIL || !isBlack(root)) {
+            throw new IllegalStateException("Root has a parent or is red");
+        }
+        int[] count = new int[1];
+        int blackHeight = validateRBTreeHelper(root, count);
+        if (count[0] != size) {
+            throw new IllegalStateException("Tree links " + count[0] + " of " + size + " nodes");
+        }
+        return blackHeight;
+    }
+
+    private int validateRBTreeHelper(int node, int[] count) {
+        if (node == NIL) {
+            return 0;
+        }
+        if (node >= size) {
+            throw new IllegalStateException("Node index " + node + " is not in use");
+        }
+        count[0]++;
+        for (int child : new int[] {left[node], right[node]}) {
+            if (child == NIL) {
+                continue;
+            }
+            if (up[child] != node) {
+                throw new IllegalStateException("Child " + get(child) + " does not point up to " + get(node));
+            }
+            int compare = get(child).compareTo(get(node));
+            if (child == left[node] ? compare > 0 : compare < 0) {
+                throw new IllegalStateException("Child " + get(child) + " is out of order below " + get(node));
+            }
+            if (!isBlack(node) && !isBlack(child)) {
+                throw new IllegalStateException("Red node " + get(node) + " has red child " + get(child));
+            }
+        }
+        int leftHeight = validateRBTreeHelper(left[node], count);
+        int rightHeight = validateRBTreeHelper(right[node], count);
+        if (leftHeight != rightHeight) {
+            throw new IllegalStateException("Paths below " + get(node) + " have different black heights");
+        }
+        return leftHeight + (isBlack(node) ? 1 : 0);
+    }
+
+    /**
+     * Tests if random inserts and removes keep the arrays a valid red-black tree that
+     * iterates in the same order as IterableRedBlackTree
+     */
+    @Test
+    public void testInsertAndRemove() {
+        Random random = new Random(400);
+        ArrayRedBlackTree<Integer> tree = new ArrayRedBlackTree<>();
+        IterableRedBlackTree<Integer> expected = new IterableRedBlackTree<>();
+        for (int i = 0; i < 3000; i++) {
+            int value = random.nextInt(500);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(value), tree.remove(value), "remove(" + value + ")");
+            } else {
+                tree.insert(value);
+                expected.insert(value);
+            }
+            tree.validateRBTree();
+        }
+
+        // Both trees should hold the same values in the same order
+        assertEquals(expected.size(), tree.size());
+        assertIterableEquals(expected, tree);
+        List<Integer> expectedRange = new ArrayList<>();
+        expected.rangeIterator(100, false, 200, true).forEachRemaining(expectedRange::add);
+        List<Integer> range = new ArrayList<>();
+        tree.rangeIterator(100, false, 200, true).forEachRemaining(range::add);
+        assertEquals(expectedRange, range);
+        tree.setIterationStartPoint(250);
+        assertTrue(tree.iterator().next() >= 250, "Start point not used");
+    }
+
+    /**
+     * Tests if bulk inserting lays out a valid tree holding old and new values in order
+     */
+    @Test
+    public void testInsertAll() {
+        ArrayRedBlackTree<Integer> tree = new ArrayRedBlackTree<>();
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            values.add(i);
+        }
+        tree.insert(2500);
+        Collections.shuffle(values, new Random(400));
+        tree.insertAll(values);
+
+        assertEquals(5001, tree.size());
+        tree.validateRBTree();
+        int previous = -1;
+        for (Integer value : tree) {
+            assertTrue(previous <= value, "Values out of order");
+            previous = value;
+        }
+        assertTrue(tree.contains(4999));
+        assertTrue(tree.remove(2500));
+        assertTrue(tree.contains(2500), "Second copy of 2500 should remain");
+        tree.validateRBTree();
+    }
+}
@@ -0,0 +1,290 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * IterableRedBlackTree of songs whose nodes also keep the smallest and the
+ * largest value of some song attributes (danceability by default) within
+ * their subtree. The values are kept up to date by updateAugmentedFields(),
+ * which the tree already calls after every insert, remove and rotation.
+ *
+ * With these values topK() finds the k songs in a range with the largest (or
+ * smallest) value of an attribute best first: it expands the subtree with the
+ * best bound next, and never opens a subtree whose bound cannot beat the k-th
+ * song found, so it visits about O(k log n) nodes however wide the range is.
+ */
+public class AugmentedSongTree extends IterableRedBlackTree<SongInterface> {
+
+    /**
+     * A node with the smallest and largest value of each augmented attribute
+     * in its subtree, by the position of the attribute in attributes.
+     */
+    protected static class SongNode extends RBTNode<SongInterface> {
+        public final int[] min;
+        public final int[] max;
+
+        public SongNode(SongInterface data, int attributeCount) {
+            super(data);
+            this.min = new int[attributeCount];
+            this.max = new int[attributeCount];
+        }
+    }
+
+    // set by augment(), before any song is inserted
+    private SongAttribute[] attributes;
+    private int[] slots; // position in attributes by ordinal, -1 when not augmented
+
+    /**
+     * Creates an empty tree that keeps the danceability range of each subtree.
+     */
+    public AugmentedSongTree() {
+        augment(SongAttribute.DANCEABILITY);
+    }
+
+    /**
+     * Creates an empty tree that keeps the range of each of attributes for
+     * each subtree.
+     * @param attributes are the attributes that topK() can rank songs by
+     * @return the new tree
+     */
+    public static AugmentedSongTree keeping(SongAttribute... attributes) {
+        AugmentedSongTree tree = new AugmentedSongTree();
+        tree.augment(attributes);
+        return tree;
+    }
+
+    private void augment(SongAttribute... attributes) {
+        this.attributes = attributes.clone();
+        this.slots = new int[SongAttribute.values().length];
+        Arrays.fill(slots, -1);
+        for (int i = 0; i < attributes.length; i++) {
+            slots[attributes[i].ordinal()] = i;
+        }
+    }
+
+    /**
+     * @return true when topK() can rank songs by attribute
+     */
+    public boolean isAugmented(SongAttribute attribute) {
+        return slots[attribute.ordinal()] >= 0;
+    }
+
+    @Override
+    protected RBTNode<SongInterface> createNode(SongInterface data) {
+        SongNode node = new SongNode(data, attributes.length);
+        updateAugmentedFields(node);
+        return node;
+    }
+
+    /**
+     * Recomputes the subtree size, and the smallest and largest value of each
+     * augmented attribute, from the song of node and the fields of its children.
+     */
+    @Override
+    protected void updateAugmentedFields(RBTNode<SongInterface> node) {
+        super.updateAugmentedFields(node);
+        SongNode songNode = (SongNode) node;
+        SongNode left = (SongNode) node.down[0];
+        SongNode right = (SongNode) node.down[1];
+        for (int i = 0; i < attributes.length; i++) {
+            int value = attributes[i].of(node.data);
+            int min = value;
+            int max = value;
+            if (left != null) {
+                min = Math.min(min, left.min[i]);
+                max = Math.max(max, left.max[i]);
+            }
+            if (right != null) {
+                min = Math.min(min, right.min[i]);
+                max = Math.max(max, right.max[i]);
+            }
+            songNode.min[i] = min;
+            songNode.max[i] = max;
+        }
+    }
+
+    /**
+     * A song, or a subtree whose songs are all at best bound, waiting to be
+     * taken by topK().
+     */
+    private static class Candidate {
+        private final int bound; // the song's value, or the best value in the subtree
+        private final long position; // in-order index of the song, or of the subtree's first song
+        private final SongNode node;
+        private final boolean isSong;
+
+        private Candidate(int bound, long position, SongNode node, boolean isSong) {
+            this.bound = bound;
+            this.position = position;
+            this.node = node;
+            this.isSong = isSong;
+        }
+    }
+
+    /**
+     * Finds the k songs between lowerBound and upperBound (both inclusive)
+     * that pass filter and have the largest (or smallest) value of attribute.
+     * Candidates are taken best bound first, and of equal bounds the one that
+     * comes first in order. So a song is only taken once every song that ranks
+     * better, or ranks the same and comes before it, has been taken.
+     * @param attribute is an augmented attribute to rank songs by
+     * @param k is the most songs to return
+     * @param ascending is true for the smallest values, false for the largest
+     * @param lowerBound is the lower end of the range, null for no lower end
+     * @param upperBound is the upper end of the range, null for no upper end
+     * @param filter is checked for each song that would be returned
+     * @return the songs best first, and songs with the same value in order
+     * @throws IllegalArgumentException when attribute is not augmented, or k is negative
+     */
+    public List<SongInterface> topK(SongAttribute attribute, int k, boolean ascending,
+                                    Comparable<SongInterface> lowerBound, Comparable<SongInterface> upperBound,
+                                    Predicate<? super SongInterface> filter) {
+        if (!isAugmented(attribute)) {
+            throw new IllegalArgumentException(attribute + " is not augmented in this tree");
+        }
+        if (k < 0) {
+            throw new IllegalArgumentException("k cannot be negative: " + k);
+        }
+        int slot = slots[attribute.ordinal()];
+        Comparator<Candidate> order = Comparator.comparingInt(candidate -> candidate.bound);
+        if (!ascending) {
+            order = order.reversed();
+        }
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(
+                order.thenComparingLong(candidate -> candidate.position));
+        if (root != null) {
+            SongNode rootNode = (SongNode) root;
+            candidates.add(new Candidate(bound(rootNode, slot, ascending), 0, rootNode, false));
+        }
+
+        List<SongInterface> result = new ArrayList<>();
+        while (result.size() < k && !candidates.isEmpty()) {
+            Candidate candidate = candidates.poll();
+            SongNode node = candidate.node;
+            if (candidate.isSong) {
+                if (filter.test(node.data)) {
+                    result.add(node.data);
+                }
+                continue;
+            }
+            // Values equal to a node can be on either side of it, so both
+            // bounds are compared to include equal values
+            SongNode left = (SongNode) node.down[0];
+            SongNode right = (SongNode) node.down[1];
+            long songPosition = candidate.position + subtreeSize(left);
+            boolean aboveLower = lowerBound == null || lowerBound.compareTo(node.data) <= 0;
+            boolean belowUpper = upperBound == null || upperBound.compareTo(node.data) >= 0;
+            if (aboveLower && belowUpper) {
+                candidates.add(new Candidate(attribute.of(node.data), songPosition, node, true));
+            }
+            if (left != null && aboveLower) {
+                candidates.add(new Candidate(bound(left, slot, ascending), candidate.position, left, false));
+            }
+            if (right != null && belowUpper) {
+                candidates.add(new Candidate(bound(right, slot, ascending), songPosition + 1, right, false));
+            }
+        }
+        return result;
+    }
+
+    private static int bound(SongNode node, int slot, boolean ascending) {
+        return ascending ? node.min[slot] : node.max[slot];
+    }
+
+    /**
+     * Checks that the augmented values of every node summarize its subtree.
+     * @throws IllegalStateException when a node has a wrong value
+     */
+    public void validateAugmentedFields() {
+        validateAugmentedFields((SongNode) root);
+    }
+
+    private void validateAugmentedFields(SongNode node) {
+        if (node == null) {
+            return;
+        }
+        validateAugmentedFields((SongNode) node.down[0]);
+        validateAugmentedFields((SongNode) node.down[1]);
+        int[] min = node.min.clone();
+        int[] max = node.max.clone();
+        updateAugmentedFields(node);
+        if (!Arrays.equals(min, node.min) || !Arrays.equals(max, node.max)) {
+            throw new IllegalStateException("Augmented values of " + node.data.getTitle() + " are out of date");
+        }
+    }
+
+    /**
+     * Tests if the augmented values stay correct through random inserts, bulk inserts
+     * and removes, and if topK() matches a stable sort of the songs in a range
+     */
+    @Test
+    public void testTopKMatchesSort() {
+        AugmentedSongTree tree = AugmentedSongTree.keeping(SongAttribute.DANCEABILITY, SongAttribute.ENERGY);
+        Random random = new Random(400);
+        List<SongInterface> batch = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            SongInterface song = new Song("Song " + i, "Artist", "pop", 2000 + random.nextInt(20),
+                    60 + random.nextInt(140), random.nextInt(100), random.nextInt(100), -random.nextInt(20), 0);
+            if (i < 1000) {
+                batch.add(song);
+            } else if (random.nextInt(5) == 0) {
+                tree.remove(tree.select(random.nextInt(tree.size())));
+            } else {
+                tree.insert(song);
+            }
+            if (i == 1000) {
+                tree.insertAll(batch);
+            }
+        }
+        tree.validateRBTree();
+        tree.validateAugmentedFields();
+
+        Comparable<SongInterface> low = song -> 100 > song.getBPM() ? 1 : -1;
+        Comparable<SongInterface> high = song -> 140 < song.getBPM() ? -1 : 1;
+        List<SongInterface> inRange = new ArrayList<>();
+        tree.rangeIterator(low, true, high, true).forEachRemaining(inRange::add);
+        for (SongAttribute attribute : new SongAttribute[] {SongAttribute.DANCEABILITY, SongAttribute.ENERGY}) {
+            for (boolean ascending : new boolean[] {true, false}) {
+                Comparator<SongInterface> ranking = Comparator.comparingInt(attribute::of);
+                List<SongInterface> sorted = new ArrayList<>(inRange);
+                sorted.sort(ascending ? ranking : ranking.reversed());
+                List<SongInterface> top = tree.topK(attribute, 20, ascending, low, high, song -> true);
+                assertEquals(20, top.size());
+                for (int i = 0; i < top.size(); i++) {
+                    assertSame(sorted.get(i), top.get(i), attribute + " " + ascending + " position " + i);
+                }
+            }
+        }
+        assertEquals(inRange.size(), tree.topK(SongAttribute.ENERGY, 5000, false, low, high, song -> true).size());
+        assertThrows(IllegalArgumentException.class,
+                () -> tree.topK(SongAttribute.YEAR, 5, false, null, null, song -> true));
+    }
+
+    /**
+     * Tests if the tree holds songs.csv like IterableRedBlackTree does, and answers
+     * fiveMostDanceable() the same way
+     */
+    @Test
+    public void testBackendDanceability() throws IOException {
+        AugmentedSongTree tree = new AugmentedSongTree();
+        Backend backend = new Backend(tree);
+        backend.readData("songs.csv");
+        Backend expected = new Backend(new IterableRedBlackTree<>());
+        expected.readData("songs.csv");
+        tree.validateAugmentedFields();
+
+        assertEquals(expected.getRange(70, 200), backend.getRange(70, 200));
+        assertEquals(expected.fiveMostDanceable(), backend.fiveMostDanceable());
+        assertEquals(expected.filterOldSongs(2012), backend.filterOldSongs(2012));
+        assertEquals(expected.fiveMostDanceable(), backend.fiveMostDanceable());
+    }
+}
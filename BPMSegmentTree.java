@@ -0,0 +1,109 @@
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Segment tree over the distinct BPM values of a fixed list of songs. Each
+ * leaf holds the SongStatistics of the songs with one BPM, and each inner
+ * node the merged statistics of its two children, so the statistics of any
+ * BPM range are merged from at most two nodes per level: O(log b) work for b
+ * distinct BPM values, without visiting a single song.
+ *
+ * The tree is stored in an array the way a binary heap is: the children of
+ * node i are at 2i and 2i + 1, and the b leaves are at [b, 2b) in order of
+ * BPM. The ends of a range are found by binary search of the sorted distinct
+ * BPM values, so BPM values far apart cost no more than neighbouring ones.
+ */
+public class BPMSegmentTree {
+
+    private final int[] bpms; // the distinct BPM values, in increasing order
+    private final SongStatistics[] nodes;
+    private final int size;
+
+    /**
+     * Builds the tree for songs in O(n log n) time.
+     * @param songs are the songs to summarize
+     */
+    public BPMSegmentTree(Collection<? extends SongInterface> songs) {
+        int[] sorted = new int[songs.size()];
+        int n = 0;
+        for (SongInterface song : songs) {
+            sorted[n++] = song.getBPM();
+        }
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        this.bpms = Arrays.copyOf(sorted, distinct);
+        this.size = songs.size();
+
+        int leafCount = bpms.length;
+        nodes = new SongStatistics[2 * leafCount];
+        for (int i = 1; i < nodes.length; i++) {
+            nodes[i] = new SongStatistics();
+        }
+        for (SongInterface song : songs) {
+            nodes[leafCount + Arrays.binarySearch(bpms, song.getBPM())].add(song);
+        }
+        for (int i = leafCount - 1; i >= 1; i--) {
+            nodes[i].merge(nodes[2 * i]);
+            nodes[i].merge(nodes[2 * i + 1]);
+        }
+    }
+
+    /**
+     * @return the number of summarized songs
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Merges the statistics of the songs with a BPM between low and high,
+     * walking up from both ends of the range and taking every node that lies
+     * fully inside it.
+     * @param low is the minimum BPM of the songs to summarize
+     * @param high is the maximum BPM of the songs to summarize
+     * @return the statistics of these songs, of no songs when low > high
+     */
+    public SongStatistics statistics(int low, int high) {
+        SongStatistics result = new SongStatistics();
+        int from = countBelow(low);
+        int to = countAtMost(high); // exclusive
+        if (from >= to) {
+            return result;
+        }
+        int leafCount = bpms.length;
+        int left = from + leafCount;
+        int right = to + leafCount;
+        while (left < right) {
+            if ((left & 1) == 1) {
+                result.merge(nodes[left++]);
+            }
+            if ((right & 1) == 1) {
+                result.merge(nodes[--right]);
+            }
+            left >>= 1;
+            right >>= 1;
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of distinct BPM values below bpm
+     */
+    private int countBelow(int bpm) {
+        int index = Arrays.binarySearch(bpms, bpm);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * @return the number of distinct BPM values of at most bpm
+     */
+    private int countAtMost(int bpm) {
+        int index = Arrays.binarySearch(bpms, bpm);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+}
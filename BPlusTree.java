@@ -0,0 +1,633 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * B+tree implementation of IterableSortedCollection. Every value is stored in
+ * a leaf, the leaves are linked to each other in order, and the internal nodes
+ * above them only hold separators for finding the right leaf. With up to
+ * MAX_KEYS values per node a lookup visits a handful of wide nodes instead of
+ * one node per level of a binary tree, and iterators walk the values of one
+ * leaf after another.
+ *
+ * Values equal to values in the tree are allowed, and are inserted after them.
+ * Removing a value never leaves an empty node behind, but nodes are not merged
+ * with their siblings when they become less than half full.
+ */
+public class BPlusTree<T extends Comparable<T>> implements IterableSortedCollection<T> {
+
+    // the most values in a leaf and the most children of an internal node
+    protected static final int MAX_KEYS = 64;
+
+    /**
+     * A node of the tree. In a leaf, keys holds count values. In an internal
+     * node, children holds count children and keys holds the count - 1
+     * separators between them: every value below children[i] is at least
+     * keys[i - 1] and at most keys[i].
+     */
+    protected static class Node {
+        public final boolean isLeaf;
+        public final Object[] keys;
+        public final Node[] children;
+        public int count = 0;
+        public Node next = null; // the following leaf, only used by leaves
+        public Node previous = null; // the preceding leaf, only used by leaves
+
+        public Node(boolean isLeaf) {
+            this.isLeaf = isLeaf;
+            // one extra slot so that a node can overflow before it is split
+            this.keys = new Object[MAX_KEYS + 1];
+            this.children = isLeaf ? null : new Node[MAX_KEYS + 1];
+        }
+    }
+
+    protected Node root = new Node(true);
+    protected int size = 0;
+    private int modificationCount = 0;
+
+    private Comparable<T> iterationStartPoint = null;
+
+    // the separator for the node returned by the last split
+    private Object splitKey;
+
+    /**
+     * Inserts a new value after any values in the tree that are equal to it,
+     * splitting every node along the way that overflows.
+     * @param value to be added into this tree
+     * @return true, as every value is inserted
+     * @throws NullPointerException when the provided value is null
+     */
+    public boolean insert(T value) throws NullPointerException {
+        if (value == null)
+            throw new NullPointerException("Cannot insert data value null into the tree.");
+        Node sibling = insertInto(root, value);
+        if (sibling != null) {
+            // Case: root was split, grow the tree by one level
+            Node newRoot = new Node(false);
+            newRoot.children[0] = root;
+            newRoot.children[1] = sibling;
+            newRoot.keys[0] = splitKey;
+            newRoot.count = 2;
+            root = newRoot;
+        }
+        size++;
+        modificationCount++;
+        return true;
+    }
+
+    /**
+     * Inserts value into the subtree below node.
+     * @return the new right sibling of node if node was split, otherwise null
+     */
+    private Node insertInto(Node node, T value) {
+        if (node.isLeaf) {
+            insertAt(node.keys, node.count, countAtMost(node.keys, node.count, value), value);
+            node.count++;
+            return node.count > MAX_KEYS ? splitLeaf(node) : null;
+        }
+        int child = countAtMost(node.keys, node.count - 1, value);
+        Node sibling = insertInto(node.children[child], value);
+        if (sibling == null) {
+            return null;
+        }
+        insertAt(node.keys, node.count - 1, child, splitKey);
+        insertAt(node.children, node.count, child + 1, sibling);
+        node.count++;
+        return node.count > MAX_KEYS ? splitInternal(node) : null;
+    }
+
+    private Node splitLeaf(Node leaf) {
+        Node sibling = new Node(true);
+        int half = leaf.count / 2;
+        sibling.count = leaf.count - half;
+        System.arraycopy(leaf.keys, half, sibling.keys, 0, sibling.count);
+        Arrays.fill(leaf.keys, half, leaf.count, null);
+        leaf.count = half;
+
+        sibling.next = leaf.next;
+        sibling.previous = leaf;
+        if (leaf.next != null) {
+            leaf.next.previous = sibling;
+        }
+        leaf.next = sibling;
+        splitKey = sibling.keys[0];
+        return sibling;
+    }
+
+    private Node splitInternal(Node node) {
+        Node sibling = new Node(false);
+        int half = node.count / 2;
+        sibling.count = node.count - half;
+        System.arraycopy(node.children, half, sibling.children, 0, sibling.count);
+        System.arraycopy(node.keys, half, sibling.keys, 0, sibling.count - 1);
+        // the separator between the two halves moves up into the parent
+        splitKey = node.keys[half - 1];
+        Arrays.fill(node.children, half, node.count, null);
+        Arrays.fill(node.keys, half - 1, node.count - 1, null);
+        node.count = half;
+        return sibling;
+    }
+
+    /**
+     * Inserts every value of data by merging the sorted values with the values
+     * of the tree, and then building full leaves and the levels above them
+     * from the merged values.
+     * @param data are the values to insert
+     * @throws NullPointerException when data or any of its values is null
+     */
+    @Override
+    public void insertAll(Collection<? extends T> data) throws NullPointerException {
+        Object[] batch = data.toArray();
+        for (Object value : batch) {
+            if (value == null)
+                throw new NullPointerException("Cannot insert data value null into the tree.");
+        }
+        Arrays.sort(batch); // stable, so equal values keep their order
+
+        // Merges the current values with the batch, old values first on ties
+        Object[] merged = new Object[size + batch.length];
+        Iterator<T> current = rangeIterator(null, true, null, true);
+        T next = current.hasNext() ? current.next() : null;
+        int j = 0;
+        int k = 0;
+        while (next != null || j < batch.length) {
+            if (j < batch.length && (next == null || compare(batch[j], next) < 0)) {
+                merged[k++] = batch[j++];
+            } else {
+                merged[k++] = next;
+                next = current.hasNext() ? current.next() : null;
+            }
+        }
+
+        clear();
+        if (merged.length == 0) {
+            return;
+        }
+        List<Node> level = new ArrayList<>();
+        Node previous = null;
+        for (int from = 0; from < merged.length; from += MAX_KEYS) {
+            Node leaf = new Node(true);
+            leaf.count = Math.min(MAX_KEYS, merged.length - from);
+            System.arraycopy(merged, from, leaf.keys, 0, leaf.count);
+            leaf.previous = previous;
+            if (previous != null) {
+                previous.next = leaf;
+            }
+            previous = leaf;
+            level.add(leaf);
+        }
+        while (level.size() > 1) {
+            level = buildParents(level);
+        }
+        root = level.get(0);
+        size = merged.length;
+        modificationCount++;
+    }
+
+    /**
+     * Groups the nodes of one level under as few parents as possible. The
+     * last two parents share their children, so that no parent has only one.
+     */
+    private List<Node> buildParents(List<Node> level) {
+        List<Node> parents = new ArrayList<>();
+        int from = 0;
+        while (from < level.size()) {
+            int remaining = level.size() - from;
+            int count = remaining <= MAX_KEYS ? remaining
+                    : remaining < 2 * MAX_KEYS ? remaining / 2 : MAX_KEYS;
+            Node parent = new Node(false);
+            for (int i = 0; i < count; i++) {
+                parent.children[i] = level.get(from + i);
+                if (i > 0) {
+                    parent.keys[i - 1] = smallest(parent.children[i]);
+                }
+            }
+            parent.count = count;
+            parents.add(parent);
+            from += count;
+        }
+        return parents;
+    }
+
+    private static Object smallest(Node node) {
+        while (!node.isLeaf) {
+            node = node.children[0];
+        }
+        return node.keys[0];
+    }
+
+    /**
+     * Removes the first value that is equal to key from the tree. A node that
+     * becomes empty is unlinked from its parent, and a root with a single
+     * child is replaced by that child.
+     * @param key a comparable for the value to remove
+     * @return true if a value was removed, false if no such value was in the tree
+     * @throws NullPointerException when the provided key is null
+     */
+    public boolean remove(Comparable<T> key) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("This tree cannot store null references.");
+        if (!removeFrom(root, key)) {
+            return false;
+        }
+        while (!root.isLeaf && root.count == 1) {
+            root = root.children[0];
+        }
+        if (!root.isLeaf && root.count == 0) {
+            root = new Node(true);
+        }
+        size--;
+        modificationCount++;
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean removeFrom(Node node, Comparable<T> key) {
+        if (node.isLeaf) {
+            for (int i = countLess(node.keys, node.count, key); i < node.count; i++) {
+                int compare = key.compareTo((T) node.keys[i]);
+                if (compare == 0) {
+                    removeAt(node.keys, node.count, i);
+                    node.count--;
+                    if (node.count == 0) {
+                        unlinkLeaf(node);
+                    }
+                    return true;
+                }
+                if (compare < 0) {
+                    break;
+                }
+            }
+            return false;
+        }
+        // Equal values can continue into the following children, as long as
+        // the separator in front of a child is not larger than key
+        for (int i = countLess(node.keys, node.count - 1, key); i < node.count; i++) {
+            if (i > 0 && key.compareTo((T) node.keys[i - 1]) < 0) {
+                break;
+            }
+            Node child = node.children[i];
+            if (removeFrom(child, key)) {
+                if (child.count == 0) {
+                    removeAt(node.children, node.count, i);
+                    removeAt(node.keys, node.count - 1, i > 0 ? i - 1 : 0);
+                    node.count--;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void unlinkLeaf(Node leaf) {
+        if (leaf.previous != null) {
+            leaf.previous.next = leaf.next;
+        }
+        if (leaf.next != null) {
+            leaf.next.previous = leaf.previous;
+        }
+        leaf.next = null;
+        leaf.previous = null;
+    }
+
+    /**
+     * Finds the leaf position of the first value that is not below the lower
+     * bound, following the leaf links when the bound is past the end of the
+     * leaf that the descent reaches.
+     * @return the leaf and the index within it, or null when no value is left
+     */
+    private Object[] seek(Comparable<T> lowerBound, boolean lowerInclusive) {
+        Node node = root;
+        while (!node.isLeaf) {
+            int separators = node.count - 1;
+            int child = lowerBound == null ? 0
+                    : lowerInclusive ? countLess(node.keys, separators, lowerBound)
+                    : countAtMost(node.keys, separators, lowerBound);
+            node = node.children[child];
+        }
+        int index = lowerBound == null ? 0
+                : lowerInclusive ? countLess(node.keys, node.count, lowerBound)
+                : countAtMost(node.keys, node.count, lowerBound);
+        while (node != null && index >= node.count) {
+            node = node.next;
+            index = 0;
+        }
+        return node == null ? null : new Object[] {node, index};
+    }
+
+    public boolean contains(Comparable<T> key) {
+        if (key == null) {
+            throw new NullPointerException("This tree cannot store null references.");
+        }
+        Iterator<T> iterator = rangeIterator(key, true, key, true);
+        return iterator.hasNext();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int modificationCount() {
+        return modificationCount;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        root = new Node(true);
+        size = 0;
+        modificationCount++;
+    }
+
+    /**
+     * @return the number of levels of the tree, 1 when the root is a leaf
+     */
+    public int height() {
+        int height = 1;
+        for (Node node = root; !node.isLeaf; node = node.children[0]) {
+            height++;
+        }
+        return height;
+    }
+
+    public void setIterationStartPoint(Comparable<T> startPoint) {
+        iterationStartPoint = startPoint;
+    }
+
+    public Iterator<T> iterator() {
+        return rangeIterator(iterationStartPoint, true, null, true);
+    }
+
+    /**
+     * Returns an iterator over the values between lowerBound and upperBound.
+     * The iterator descends to the first value in the range once, and then
+     * reads the values of each leaf in turn.
+     * @param lowerBound is the lower end of the range, null for no lower end
+     * @param lowerInclusive is true when values equal to lowerBound are included
+     * @param upperBound is the upper end of the range, null for no upper end
+     * @param upperInclusive is true when values equal to upperBound are included
+     * @return an iterator over the values in the range
+     */
+    public Iterator<T> rangeIterator(Comparable<T> lowerBound, boolean lowerInclusive,
+                                     Comparable<T> upperBound, boolean upperInclusive) {
+        Object[] start = seek(lowerBound, lowerInclusive);
+        return new Iterator<T>() {
+            private Node leaf = start == null ? null : (Node) start[0];
+            private int index = start == null ? 0 : (Integer) start[1];
+            {
+                checkUpperBound();
+            }
+
+            @SuppressWarnings("unchecked")
+            private void checkUpperBound() {
+                if (leaf == null || upperBound == null) {
+                    return;
+                }
+                int compare = upperBound.compareTo((T) leaf.keys[index]);
+                if (compare < 0 || (compare == 0 && !upperInclusive)) {
+                    leaf = null;
+                }
+            }
+
+            public boolean hasNext() {
+                return leaf != null;
+            }
+
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (leaf == null) {
+                    throw new NoSuchElementException();
+                }
+                T value = (T) leaf.keys[index++];
+                if (index == leaf.count) {
+                    leaf = leaf.next;
+                    index = 0;
+                }
+                checkUpperBound();
+                return value;
+            }
+        };
+    }
+
+    /**
+     * Counts the leading values of keys[0, count) that are smaller than bound.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> int countLess(Object[] keys, int count, Comparable<T> bound) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (bound.compareTo((T) keys[middle]) > 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Counts the leading values of keys[0, count) that are not larger than bound.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> int countAtMost(Object[] keys, int count, Comparable<T> bound) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (bound.compareTo((T) keys[middle]) >= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static void insertAt(Object[] array, int count, int index, Object value) {
+        System.arraycopy(array, index, array, index + 1, count - index);
+        array[index] = value;
+    }
+
+    private static void removeAt(Object[] array, int count, int index) {
+        if (count == 0) {
+            return;
+        }
+        System.arraycopy(array, index + 1, array, index, count - index - 1);
+        array[count - 1] = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object value, T other) {
+        return ((T) value).compareTo(other);
+    }
+
+    /**
+     * Checks that every leaf is at the same depth, no node is empty or
+     * overfull, every value lies between the separators above it, and the
+     * leaf links visit size() values in order.
+     * @return the height of the tree
+     * @throws IllegalStateException describing the first violation found
+     */
+    public int validate() throws IllegalStateException {
+        int height = validateNode(root, null, null, root.isLeaf);
+        int count = 0;
+        Object previous = null;
+        Node leaf = root;
+        while (!leaf.isLeaf) {
+            leaf = leaf.children[0];
+        }
+        if (leaf.previous != null) {
+            throw new IllegalStateException("First leaf has a previous leaf");
+        }
+        for (; leaf != null; leaf = leaf.next) {
+            if (leaf.next != null && leaf.next.previous != leaf) {
+                throw new IllegalStateException("Leaf links do not match");
+            }
+            for (int i = 0; i < leaf.count; i++) {
+                if (previous != null && compare(previous, cast(leaf.keys[i])) > 0) {
+                    throw new IllegalStateException("Value " + leaf.keys[i] + " is out of order");
+                }
+                previous = leaf.keys[i];
+                count++;
+            }
+        }
+        if (count != size) {
+            throw new IllegalStateException("Leaves hold " + count + " of " + size + " values");
+        }
+        return height;
+    }
+
+    private int validateNode(Node node, Object low, Object high, boolean mayBeEmpty) {
+        if (node.count > MAX_KEYS || (node.count == 0 && !mayBeEmpty)
+                || (!node.isLeaf && node.count < 2 && node == root)) {
+            throw new IllegalStateException("Node holds " + node.count + " entries");
+        }
+        if (node.isLeaf) {
+            for (int i = 0; i < node.count; i++) {
+                if ((low != null && compare(node.keys[i], cast(low)) < 0)
+                        || (high != null && compare(node.keys[i], cast(high)) > 0)) {
+                    throw new IllegalStateException("Value " + node.keys[i] + " is outside of its separators");
+                }
+            }
+            return 1;
+        }
+        int height = -1;
+        for (int i = 0; i < node.count; i++) {
+            Object childLow = i == 0 ? low : node.keys[i - 1];
+            Object childHigh = i == node.count - 1 ? high : node.keys[i];
+            int childHeight = validateNode(node.children[i], childLow, childHigh, false);
+            if (height != -1 && childHeight != height) {
+                throw new IllegalStateException("Leaves are at different depths");
+            }
+            height = childHeight;
+        }
+        return height + 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T cast(Object value) {
+        return (T) value;
+    }
+
+    /**
+     * Tests if random inserts and removes keep a valid tree that iterates in
+     * the same order as IterableRedBlackTree
+     */
+    @Test
+    public void testInsertAndRemove() {
+        Random random = new Random(400);
+        BPlusTree<Integer> tree = new BPlusTree<>();
+        IterableRedBlackTree<Integer> expected = new IterableRedBlackTree<>();
+        for (int i = 0; i < 20000; i++) {
+            int value = random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(value), tree.remove(value), "remove(" + value + ")");
+            } else {
+                tree.insert(value);
+                expected.insert(value);
+            }
+            if (i % 100 == 0) {
+                tree.validate();
+            }
+        }
+        tree.validate();
+        assertTrue(tree.height() > 1, "Tree should have internal nodes");
+        assertEquals(expected.size(), tree.size());
+        assertIterableEquals(expected, tree);
+
+        // Removing every value should leave an empty tree
+        for (int value = 0; value < 2000; value++) {
+            while (tree.remove(value)) {
+            }
+        }
+        assertTrue(tree.isEmpty());
+        assertEquals(1, tree.validate());
+    }
+
+    /**
+     * Tests if ranges and the iteration start point find duplicates that span leaves
+     */
+    @Test
+    public void testRangeIterator() {
+        BPlusTree<Integer> tree = new BPlusTree<>();
+        for (int i = 0; i < 1000; i++) {
+            tree.insert(i % 10 == 5 ? 5 : i); // 100 copies of 5
+        }
+        tree.validate();
+
+        List<Integer> fives = new ArrayList<>();
+        tree.rangeIterator(5, true, 5, true).forEachRemaining(fives::add);
+        assertEquals(100, fives.size());
+        assertTrue(tree.contains(5));
+        assertFalse(tree.contains(15));
+
+        List<Integer> range = new ArrayList<>();
+        tree.rangeIterator(5, false, 20, false).forEachRemaining(range::add);
+        assertEquals(List.of(6, 7, 8, 9, 10, 11, 12, 13, 14, 16, 17, 18, 19), range);
+
+        tree.setIterationStartPoint(996);
+        range.clear();
+        tree.forEach(range::add);
+        assertEquals(List.of(996, 997, 998, 999), range);
+    }
+
+    /**
+     * Tests if bulk inserting builds a valid tree holding old and new values in order
+     */
+    @Test
+    public void testInsertAll() {
+        BPlusTree<Integer> tree = new BPlusTree<>();
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            values.add(i);
+        }
+        tree.insert(5000);
+        Collections.shuffle(values, new Random(400));
+        tree.insertAll(values);
+
+        assertEquals(10001, tree.size());
+        assertEquals(3, tree.validate());
+        int previous = -1;
+        for (Integer value : tree) {
+            assertTrue(previous <= value, "Values out of order");
+            previous = value;
+        }
+        assertTrue(tree.remove(5000));
+        assertTrue(tree.contains(5000), "Second copy of 5000 should remain");
+        tree.insert(10000);
+        tree.validate();
+    }
+}
@@ -1,24 +1,95 @@
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 
 public class Backend implements BackendInterface {
     private IterableSortedCollection<SongInterface> songTree;
 
+    // Attributes with a secondary index, songTree itself is sorted by BPM
+    private static final SongAttribute[] INDEXED_ATTRIBUTES = {
+        SongAttribute.YEAR, SongAttribute.DANCEABILITY, SongAttribute.ENERGY, SongAttribute.LOUDNESS
+    };
+
+    // Secondary indexes over the songs of songTree
+    private final Map<SongAttribute, SongIndex> indexes = new EnumMap<>(SongAttribute.class);
+
     public Backend(IterableSortedCollection<SongInterface> songTree) {
         this.songTree = songTree;
+        for (SongAttribute attribute : INDEXED_ATTRIBUTES) {
+            indexes.put(attribute, new SongIndex(attribute));
+        }
     }
 
-    // Saved BPM Range List for future use
-    private List<SongInterface> BPMSongsList = new ArrayList<>();
-
     // Saved max year if set by filterOldSongs
     private int maxYearFilter = 2030;
 
+    // If filterOldSongs() has set maxYearFilter
+    private boolean isMaxYearFilterSet = false;
+
     // If getRange() is called
     private boolean isGetRangeCalled = false;
-    
+
+    // BPM range saved by the most recent call to getRange()
+    private int rangeLow;
+    private int rangeHigh;
+
+    // The songs of every year in the saved BPM range, indexed by year, built
+    // when they are first needed
+    private SongSelection savedSelection = null;
+
+    // The latest year whose songs savedSelection holds, as getRange() only
+    // visits the songs up to the maxYear filter when the year index drives it
+    private int savedSelectionYear = Integer.MAX_VALUE;
+
+
+    // The attribute that drove the most recent scan planned by findSongs()
+    private SongAttribute lastScanAttribute = SongAttribute.BPM;
+
+    // Bitmaps over the songs of songTree, built when they are first needed
+    private BitmapIndex bitmapIndex = null;
+
+    // k-d tree over the songs of songTree, built when it is first needed
+    private KDTree kdTree = null;
+
+    // Statistics of the songs of songTree by BPM, built when they are first needed
+    private BPMSegmentTree bpmStatistics = null;
+
+    // Title and artist search over the songs of songTree, built by readData()
+    private SongSearchIndex searchIndex = null;
+
+    // The most results queryCache keeps unless setCacheCapacity() is called
+    private static final int DEFAULT_CACHE_CAPACITY = 64;
+
+    // Results of recent getRange(), filterOldSongs() and topK() calls, by their
+    // normalized parameters
+    private final QueryCache<List<Object>, List<String>> queryCache = new QueryCache<>(DEFAULT_CACHE_CAPACITY);
+
+    // The modification count of songTree that the secondary indexes match
+    private int indexesModificationCount = -1;
+
+    // The modification count of songTree that bitmapIndex, kdTree,
+    // bpmStatistics, searchIndex, savedSelection and queryCache match
+    private int resultsModificationCount = -1;
+
+    // If readData() parses the file on the common fork/join pool
+    private boolean parallelIngestion = false;
+
+    /**
+     * Selects whether readData() parses the file on a single thread or splits
+     * it into chunks that are parsed on the common fork/join pool. Both modes
+     * insert the songs into the tree in file order, so the resulting
+     * collection is the same.
+     *
+     * @param parallel is true to parse in parallel, false to parse serially
+     */
+    public void setParallelIngestion(boolean parallel) {
+        this.parallelIngestion = parallel;
+    }
+
     /**
      * Loads data from the .csv file referenced by filename.
      *
@@ -27,6 +98,76 @@ public class Backend implements BackendInterface {
      */
     @Override
     public void readData(String filename) throws IOException {
+        // Parses the memory-mapped file straight from its bytes
+        MappedSongReader reader = new MappedSongReader(filename);
+        List<SongInterface> songs = parallelIngestion
+                ? reader.readSongsParallel(ForkJoinPool.commonPool())
+                : reader.readSongs();
+        indexes();
+        this.songTree.insertAll(songs);
+        for (SongIndex index : indexes.values()) {
+            index.insertAll(songs);
+        }
+        indexesModificationCount = this.songTree.modificationCount();
+        // Built now, so the first search of the typeahead does not have to wait
+        dropStaleResults();
+        searchIndex = new SongSearchIndex(songsInOrder());
+    }
+
+    /**
+     * Sets the most query results that are cached. getRange(),
+     * filterOldSongs(), fiveMostDanceable() and topK() calls that repeat a
+     * cached query return a copy of its result without reading any songs.
+     * When more results are cached, the least recently used ones are dropped.
+     *
+     * @param capacity is the most results to cache, 0 to cache none
+     * @throws IllegalArgumentException when capacity is negative
+     */
+    public void setCacheCapacity(int capacity) {
+        queryCache.setCapacity(capacity);
+    }
+
+    /**
+     * @return the number of queries answered from the cache
+     */
+    public long getCacheHits() {
+        return queryCache.hits();
+    }
+
+    /**
+     * @return the number of queries that were not in the cache
+     */
+    public long getCacheMisses() {
+        return queryCache.misses();
+    }
+
+    /**
+     * Returns a copy of the cached result for key, after running query and
+     * caching its result when there is none.
+     */
+    private List<String> cachedQuery(List<Object> key, Supplier<List<String>> query) {
+        dropStaleResults();
+        return new ArrayList<>(queryCache.get(key, () -> Collections.unmodifiableList(query.get())));
+    }
+
+    /**
+     * @return the cache key for the titles of the songs with a BPM between low
+     *     and high and a year of at most maxYear, which getRange() and
+     *     filterOldSongs() share; every empty range has the same key
+     */
+    private static List<Object> titlesKey(int low, int high, int maxYear) {
+        return low > high ? List.of("titles") : List.of("titles", low, high, maxYear);
+    }
+
+    /**
+     * Loads data from the .csv file referenced by filename one line at a time
+     * through a Scanner. This is the original loader, kept as the reference
+     * that the memory-mapped loader used by readData() is compared against.
+     *
+     * @param filename is the name of the csv file to load data from
+     * @throws IOException when there is trouble finding/reading file
+     */
+    public void readDataWithScanner(String filename) throws IOException {
         try {
             File file = new File(filename); // Saving file
             Scanner scanner = new Scanner(file); // Scanning file
@@ -91,34 +232,552 @@ public class Backend implements BackendInterface {
      */
     @Override
     public List<String> getRange(int low, int high) {
-        List<SongInterface> tempList = new ArrayList<>(); // List for songs in BPM range
+	this.isGetRangeCalled = true;
 
-        Iterator<SongInterface> iterator = this.songTree.iterator();
+        // Saving range for future use
+        this.rangeLow = low;
+        this.rangeHigh = high;
+        this.savedSelection = null;
 
-	this.isGetRangeCalled = true;
+        // Returning titles
+        return cachedQuery(titlesKey(low, high, maxYearFilter), () -> {
+            List<String> titles = new ArrayList<>();
+            for (SongInterface song : selectRange(low, high)) {
+                titles.add(song.getTitle());
+            }
+            return titles;
+        });
+    }
+
+    /**
+     * Collects the songs with a Speed (BPM) between low and high that pass the
+     * maxYear filter, in ascending order, like songsInRange(), and saves the
+     * songs the scan visits as the selection that filterOldSongs() refines.
+     * When the BPM range drives the scan, it visits and saves the songs of
+     * every year; when the year index is cheaper, only those up to maxYear.
+     */
+    private List<SongInterface> selectRange(int low, int high) {
+        Constraint range = new Constraint(SongAttribute.BPM, low, high);
+        Constraint years = new Constraint(SongAttribute.YEAR, Integer.MIN_VALUE, maxYearFilter);
+        if (scanCost(range) <= scanCost(years)) {
+            savedSelection = new SongSelection(findSongs(range));
+            savedSelectionYear = Integer.MAX_VALUE;
+            return savedSelection.upToYear(maxYearFilter);
+        }
+        List<SongInterface> songs = findSongs(range, years);
+        savedSelection = new SongSelection(songs);
+        savedSelectionYear = maxYearFilter;
+        return songs;
+    }
+
+    /**
+     * Collects the songs with a Speed (BPM) between low and high that pass the
+     * maxYear filter, in ascending order.
+     */
+    private List<SongInterface> songsInRange(int low, int high) {
+        return findSongs(new Constraint(SongAttribute.BPM, low, high),
+                new Constraint(SongAttribute.YEAR, Integer.MIN_VALUE, maxYearFilter));
+    }
+
+    /**
+     * A condition that one attribute of a song is between low and high.
+     */
+    private static class Constraint {
+        private final SongAttribute attribute;
+        private final int low;
+        private final int high;
 
-        // Filters songs in BPM range and adds to List, while checking for maxYearFilter
-        while (iterator.hasNext()) {
+        private Constraint(SongAttribute attribute, int low, int high) {
+            this.attribute = attribute;
+            this.low = low;
+            this.high = high;
+        }
+
+        private boolean matches(SongInterface song) {
+            int value = attribute.of(song);
+            return low <= value && value <= high;
+        }
+    }
+
+    /**
+     * Collects the songs that match every constraint. A constraint on BPM can
+     * drive the scan through songTree, and a constraint on an indexed attribute
+     * through its index. The planner counts the songs each of these would
+     * visit and scans the smallest range, checking the other constraints
+     * against each song it visits. Ties go to the earlier constraint.
+     *
+     * @param constraints are the conditions that returned songs meet
+     * @return the matching songs in ascending order
+     */
+    private List<SongInterface> findSongs(Constraint... constraints) {
+        return findSongs(null, song -> true, Integer.MAX_VALUE, constraints);
+    }
+
+    /**
+     * Counts the songs a scan driven by constraint would visit: the songs of
+     * its range of songTree for BPM, or of its range of a secondary index.
+     *
+     * @return the number of these songs, Integer.MAX_VALUE when no index can
+     *     drive a scan by the attribute of constraint
+     */
+    private int scanCost(Constraint constraint) {
+        if (constraint.attribute == SongAttribute.BPM) {
+            return this.songTree.countInRange(bpmAtLeast(constraint.low), true,
+                    bpmAtMost(constraint.high), true);
+        } else if (indexes().containsKey(constraint.attribute)) {
+            return indexes.get(constraint.attribute).count(constraint.low, constraint.high);
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Collects the songs that match every constraint, like
+     * findSongs(constraints). The rows of the bitmap index that hold every
+     * match can be given as one more way to drive the scan, which the planner
+     * counts like the constraints; inRows then checks the condition the rows
+     * stand for, on the songs of any other scan. When the scan visits songs
+     * in ascending order, it stops as soon as stopAfter songs are found.
+     *
+     * @param rows        are bitmap index rows that hold every match, null for none
+     * @param inRows      is checked for each song that meets every constraint,
+     *                    unless rows drove the scan
+     * @param stopAfter   is the most songs that have to be found
+     * @param constraints are the conditions that returned songs meet
+     * @return the first stopAfter matching songs, or every matching song, in ascending order
+     */
+    private List<SongInterface> findSongs(RoaringBitmap rows, Predicate<? super SongInterface> inRows,
+                                          int stopAfter, Constraint... constraints) {
+        Constraint driver = null;
+        int cost = Integer.MAX_VALUE;
+        for (Constraint constraint : constraints) {
+            int count = scanCost(constraint);
+            if (count < cost) {
+                driver = constraint;
+                cost = count;
+            }
+        }
+
+        Iterator<SongInterface> iterator;
+        Predicate<? super SongInterface> filter = inRows;
+        if (rows != null && rows.cardinality() < cost) {
+            iterator = bitmapIndex().songs(rows).iterator();
+            filter = song -> true; // every song of rows is in rows
+            lastScanAttribute = null;
+        } else {
+            if (driver == null) {
+                iterator = this.songTree.rangeIterator(null, true, null, true);
+            } else if (driver.attribute == SongAttribute.BPM) {
+                iterator = this.songTree.rangeIterator(bpmAtLeast(driver.low), true, bpmAtMost(driver.high), true);
+            } else {
+                iterator = indexes.get(driver.attribute).iterator(driver.low, driver.high);
+            }
+            lastScanAttribute = driver == null ? SongAttribute.BPM : driver.attribute;
+        }
+        // Only a scan in ascending order can stop at the first matches
+        boolean isInOrder = lastScanAttribute == null || lastScanAttribute == SongAttribute.BPM;
+
+        List<SongInterface> songs = new ArrayList<>();
+        while (iterator.hasNext() && (!isInOrder || songs.size() < stopAfter)) {
             SongInterface song = iterator.next();
-            if (song.getBPM() >= low && song.getBPM() <= high && song.getYear() <= maxYearFilter) {
-                tempList.add(song);
+            boolean matches = true;
+            for (Constraint constraint : constraints) {
+                matches = matches && constraint.matches(song);
+            }
+            if (matches && filter.test(song)) {
+                songs.add(song);
             }
         }
+        if (!isInOrder) {
+            songs.sort(null); // an index returns songs by its own attribute first
+            if (songs.size() > stopAfter) {
+                songs = new ArrayList<>(songs.subList(0, stopAfter));
+            }
+        }
+        return songs;
+    }
 
-        // Organizes list in ascending order
-        tempList.sort(Comparator.comparingInt(SongInterface::getBPM));
+    /**
+     * @return the attribute whose songTree range or index drove the most
+     *     recent scan, for checking which plan was picked, or null when the
+     *     genre bitmaps of a query() drove it
+     */
+    public SongAttribute getLastScanAttribute() {
+        return lastScanAttribute;
+    }
 
-        // Saving list for future use
-        BPMSongsList = tempList;
+    /**
+     * Returns the secondary indexes, after rebuilding them when songTree has
+     * been changed in a way that they were not updated for, which is noticed
+     * by its modification count.
+     */
+    private Map<SongAttribute, SongIndex> indexes() {
+        if (indexesModificationCount != this.songTree.modificationCount()) {
+            List<SongInterface> songs = songsInOrder();
+            for (SongIndex index : indexes.values()) {
+                index.clear();
+                index.insertAll(songs);
+            }
+            indexesModificationCount = this.songTree.modificationCount();
+        }
+        return indexes;
+    }
 
-        // Returning titles
+    /**
+     * Drops the bitmap index, k-d tree, BPM statistics, search index, saved
+     * selection and cached results when the modification count of songTree
+     * shows that it has changed since they were built. Each of them is then
+     * built again the next time it is used.
+     */
+    private void dropStaleResults() {
+        int modificationCount = this.songTree.modificationCount();
+        if (resultsModificationCount != modificationCount) {
+            bitmapIndex = null;
+            kdTree = null;
+            bpmStatistics = null;
+            searchIndex = null;
+            savedSelection = null;
+            queryCache.clear();
+            resultsModificationCount = modificationCount;
+        }
+    }
+
+    /**
+     * Returns the bitmap index, after building it when songTree has changed
+     * since it was built.
+     */
+    private BitmapIndex bitmapIndex() {
+        dropStaleResults();
+        if (bitmapIndex == null) {
+            bitmapIndex = new BitmapIndex(songsInOrder());
+        }
+        return bitmapIndex;
+    }
+
+    /**
+     * Returns the k-d tree, after building it when songTree has changed since
+     * it was built.
+     */
+    private KDTree kdTree() {
+        dropStaleResults();
+        if (kdTree == null) {
+            kdTree = new KDTree(songsInOrder());
+        }
+        return kdTree;
+    }
+
+    /**
+     * Returns the search index, after building it when songTree has changed
+     * since it was built.
+     */
+    private SongSearchIndex searchIndex() {
+        dropStaleResults();
+        if (searchIndex == null) {
+            searchIndex = new SongSearchIndex(songsInOrder());
+        }
+        return searchIndex;
+    }
+
+    /**
+     * Retrieves the titles of the songs whose title or artist contains every
+     * word of query, ignoring case. The last word only has to be the beginning
+     * of a word, so this can be called on every key press. Words are looked up
+     * in the search index, so the time does not depend on the number of songs.
+     * Does not save anything for later use.
+     *
+     * @param query is the words to search for
+     * @param limit is the most titles to return
+     * @return List of titles of at most limit matching songs, sorted by BPM
+     */
+    @Override
+    public List<String> searchSongs(String query, int limit) {
+        List<String> titles = new ArrayList<>();
+        for (SongInterface song : searchIndex().search(query, limit)) {
+            titles.add(song.getTitle());
+        }
+        return titles;
+    }
+
+    /**
+     * Summarizes the songs that have a Speed (BPM) within the specified range:
+     * their count, and the sum, average, minimum and maximum of each of their
+     * attributes. The statistics are merged from the nodes of a segment tree
+     * over BPM, in O(log b) time for b distinct BPM values, without building
+     * the list of songs. Covers every loaded song, whether or not a maxYear
+     * filter is set, and does not save the range for later use.
+     *
+     * @param low  is the minimum Speed (BPM) of the summarized songs
+     * @param high is the maximum Speed (BPM) of the summarized songs
+     * @return the statistics of the songs in specified range
+     */
+    public SongStatistics rangeStatistics(int low, int high) {
+        dropStaleResults();
+        if (bpmStatistics == null) {
+            bpmStatistics = new BPMSegmentTree(songsInOrder());
+        }
+        return bpmStatistics.statistics(low, high);
+    }
+
+    /**
+     * @return every song of songTree, in its natural order
+     */
+    private List<SongInterface> songsInOrder() {
+        List<SongInterface> songs = new ArrayList<>(this.songTree.size());
+        this.songTree.rangeIterator(null, true, null, true).forEachRemaining(songs::add);
+        return songs;
+    }
+
+    /**
+     * Retrieves the titles of the songs whose BPM, energy, danceability,
+     * loudness and liveness are all within the given bounds, sorted by BPM
+     * like getRange(). The box is answered by the k-d tree, which only visits
+     * the parts of the tree that overlap it. Does not save anything for later use.
+     *
+     * @param low  are the inclusive lower bounds, in the order of KDTree.DIMENSIONS;
+     *             use Integer.MIN_VALUE for no lower bound
+     * @param high are the inclusive upper bounds, in the order of KDTree.DIMENSIONS;
+     *             use Integer.MAX_VALUE for no upper bound
+     * @return List of titles of the songs within the bounds
+     * @throws IllegalArgumentException when there is not one bound per dimension
+     */
+    public List<String> songsWithin(int[] low, int[] high) {
+        List<SongInterface> songs = kdTree().rangeQuery(low, high);
+        songs.sort(null);
+        List<String> titles = new ArrayList<>();
+        for (SongInterface song : songs) {
+            titles.add(song.getTitle());
+        }
+        return titles;
+    }
+
+    /**
+     * Retrieves the titles of the songs that are most like song, by Euclidean
+     * distance over BPM, energy, danceability, loudness and liveness. The k-d
+     * tree skips every part of the tree that cannot hold a closer song.
+     *
+     * @param song  is the song to find similar songs for, left out of the result
+     * @param count is the most titles to return
+     * @return List of titles of the most similar songs, most similar first
+     */
+    public List<String> similarSongs(SongInterface song, int count) {
+        List<String> titles = new ArrayList<>();
+        for (SongInterface similar : kdTree().nearest(song, count)) {
+            titles.add(similar.getTitle());
+        }
+        return titles;
+    }
+
+    /**
+     * Returns the saved songs of the BPM range of the most recent call to
+     * getRange(), holding at least every song up to maxYear. getRange() saves
+     * the songs its scan visits, so songTree is only scanned here when the
+     * titles came from the cache, songTree has changed since, or maxYear is
+     * later than the year filter whose index drove the scan. Every year filter
+     * after that is a binary search of the selection.
+     */
+    private SongSelection savedSelection(int maxYear) {
+        dropStaleResults();
+        if (savedSelection == null || maxYear > savedSelectionYear) {
+            List<SongInterface> songs = new ArrayList<>();
+            if (rangeLow <= rangeHigh) {
+                this.songTree.rangeIterator(bpmAtLeast(rangeLow), true, bpmAtMost(rangeHigh), true)
+                        .forEachRemaining(songs::add);
+            }
+            savedSelection = new SongSelection(songs);
+            savedSelectionYear = Integer.MAX_VALUE;
+        }
+        return savedSelection;
+    }
+
+    /**
+     * Retrieves the titles of the songs that pass every given filter, sorted
+     * by BPM like getRange(). The filters are answered by intersecting the
+     * bitmaps of the bitmap index, so stacking more of them never means
+     * checking more songs. Does not save the range or the year for later use.
+     *
+     * @param low     is the minimum Speed (BPM) of returned songs
+     * @param high    is the maximum Speed (BPM) of returned songs
+     * @param maxYear is the maximum year that a returned song was on Billboard
+     * @param genre   is the exact genres of returned songs, null for any genre
+     * @return List of titles of the songs that pass every filter
+     */
+    public List<String> filterSongs(int low, int high, int maxYear, String genre) {
+        BitmapIndex index = bitmapIndex();
+        RoaringBitmap rows = index.bpmBetween(low, high).and(index.yearAtMost(maxYear));
+        if (genre != null) {
+            rows = rows.and(index.genre(genre));
+        }
         List<String> titles = new ArrayList<>();
-        for (SongInterface song : BPMSongsList) {
+        for (SongInterface song : index.songs(rows)) {
             titles.add(song.getTitle());
         }
         return titles;
     }
 
+    /**
+     * Retrieves a list of song titles for songs that have a Speed (BPM)
+     * within the specified range and whose genres contain every word of
+     * genre, sorted by BPM. The genre words are looked up in the bitmap
+     * index and intersected with the BPM range and the maxYear filter, so no
+     * genres string is compared. Does not save the range for later use.
+     *
+     * @param low   is the minimum Speed (BPM) of songs in the returned list
+     * @param high  is the maximum Speed (BPM) of songs in the returned list
+     * @param genre is one or more genre words, any genre when it is null or has no words
+     * @return List of titles for all songs in specified range and genre
+     */
+    @Override
+    public List<String> getRange(int low, int high, String genre) {
+        BitmapIndex index = bitmapIndex();
+        RoaringBitmap rows = index.bpmBetween(low, high).and(index.yearAtMost(maxYearFilter));
+        if (genre != null) {
+            rows = rows.and(index.genreWords(genre));
+        }
+        List<String> titles = new ArrayList<>();
+        for (SongInterface song : index.songs(rows)) {
+            titles.add(song.getTitle());
+        }
+        return titles;
+    }
+
+    /**
+     * Retrieves one page of the list that getRange(low, high) would return:
+     * the titles at positions offset to offset + limit - 1 of that list.
+     * Unlike getRange(), this does not save the range for later use.
+     * <p>
+     * Without a maxYear filter, a tree that keeps subtree sizes finds the page
+     * by position, so the cost depends on limit but not on how many songs are
+     * in the range. Other trees walk the range up to the end of the page once.
+     *
+     * @param low    is the minimum Speed (BPM) of songs in the returned list
+     * @param high   is the maximum Speed (BPM) of songs in the returned list
+     * @param offset is the number of titles to skip
+     * @param limit  is the maximum number of titles to return
+     * @return List of at most limit titles of songs in specified range
+     * @throws IllegalArgumentException when offset or limit is negative
+     */
+    @Override
+    public List<String> getRange(int low, int high, int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("offset and limit cannot be negative");
+        }
+        List<String> titles = new ArrayList<>();
+
+        if (!isMaxYearFilterSet && keepsSubtreeSizes()) {
+            // Songs in range are at positions [first, first + count) of the tree
+            int first = this.songTree.rank(bpmAtLeast(low));
+            int count = this.songTree.countInRange(bpmAtLeast(low), true, bpmAtMost(high), true);
+            int pageSize = Math.max(0, Math.min(limit, count - offset));
+            for (int i = 0; i < pageSize; i++) {
+                titles.add(this.songTree.select(first + offset + i).getTitle());
+            }
+            return titles;
+        }
+        if (!isMaxYearFilterSet) {
+            // rank() and select() would walk the tree for every title, so walk the range once
+            Iterator<SongInterface> songs = this.songTree.rangeIterator(bpmAtLeast(low), true, bpmAtMost(high), true);
+            for (int i = 0; i < offset && songs.hasNext(); i++) {
+                songs.next();
+            }
+            while (titles.size() < limit && songs.hasNext()) {
+                titles.add(songs.next().getTitle());
+            }
+            return titles;
+        }
+
+        // With a maxYear filter, the planner picks between the BPM range and the year index
+        List<SongInterface> songs = songsInRange(low, high);
+        for (int i = offset; i < songs.size() && titles.size() < limit; i++) {
+            titles.add(songs.get(i).getTitle());
+        }
+        return titles;
+    }
+
+    /**
+     * Counts the songs that getRange(low, high) would return, without
+     * building the list of their titles. Does not save the range for later use.
+     * Without a maxYear filter, this takes O(log n) time on a tree that keeps
+     * subtree sizes.
+     *
+     * @param low  is the minimum Speed (BPM) of songs to count
+     * @param high is the maximum Speed (BPM) of songs to count
+     * @return the number of songs in specified range
+     */
+    @Override
+    public int countInRange(int low, int high) {
+        if (!isMaxYearFilterSet) {
+            return this.songTree.countInRange(bpmAtLeast(low), true, bpmAtMost(high), true);
+        }
+
+        // With a maxYear filter, the planner picks between the BPM range and the year index
+        return songsInRange(low, high).size();
+    }
+
+    /**
+     * Removes one song that matches song in every attribute. The indexes are
+     * updated (or for bitmaps, rebuilt the next time they are used), so a
+     * batch of d changes does not need the csv file to be reloaded.
+     *
+     * @param song is the song to remove
+     * @return true if a song was removed, false if no such song was loaded
+     * @throws NullPointerException when song is null
+     */
+    @Override
+    public boolean removeSong(SongInterface song) {
+        indexes();
+        if (!this.songTree.remove(song)) {
+            return false;
+        }
+        for (SongIndex index : indexes.values()) {
+            index.remove(song);
+        }
+        indexesModificationCount = this.songTree.modificationCount();
+        return true;
+    }
+
+    /**
+     * Replaces one song that matches oldSong in every attribute with newSong.
+     *
+     * @param oldSong is the song to replace
+     * @param newSong is the corrected song that takes its place
+     * @return true if a song was replaced, false if no such song was loaded
+     * @throws NullPointerException when either song is null
+     */
+    @Override
+    public boolean updateSong(SongInterface oldSong, SongInterface newSong) {
+        indexes();
+        if (!this.songTree.update(oldSong, newSong)) {
+            return false;
+        }
+        for (SongIndex index : indexes.values()) {
+            index.remove(oldSong);
+            index.insert(newSong);
+        }
+        indexesModificationCount = this.songTree.modificationCount();
+        return true;
+    }
+
+    /**
+     * @return true when the song tree answers rank() and select() in O(log n)
+     *     time from the sizes of its subtrees
+     */
+    private boolean keepsSubtreeSizes() {
+        return songTree instanceof RedBlackTree || songTree instanceof PersistentRedBlackTree;
+    }
+
+    /**
+     * @return a lower range bound that is below every song with a BPM of at least bpm
+     */
+    private static Comparable<SongInterface> bpmAtLeast(int bpm) {
+        return song -> bpm > song.getBPM() ? 1 : -1;
+    }
+
+    /**
+     * @return an upper range bound that is above every song with a BPM of at most bpm
+     */
+    private static Comparable<SongInterface> bpmAtMost(int bpm) {
+        return song -> bpm < song.getBPM() ? -1 : 1;
+    }
+
     /**
      * Filters the list of songs returned by future calls of getRange() and
      * fiveMostDanceable() to only include older songs.  If getRange() was
@@ -129,6 +788,11 @@ public class Backend implements BackendInterface {
      * <p>
      * Note that this maxYear threshold should be saved for later use by the
      * other methods defined in this class.
+     * <p>
+     * The songs of every year in the saved BPM range are kept sorted by year,
+     * so each call finds its k songs by binary search in O(log n + k log k)
+     * time without scanning the tree again, and a later, looser maxYear
+     * brings back the songs that a stricter one left out.
      *
      * @param maxYear is the maximum year that a returned song was on Billboard
      * @return List of song titles, empty if getRange was not previously called
@@ -136,22 +800,20 @@ public class Backend implements BackendInterface {
     @Override
     public List<String> filterOldSongs(int maxYear) {
         this.maxYearFilter = maxYear; // Saves max year for future use
+        this.isMaxYearFilterSet = true;
 
         if (!isGetRangeCalled) { // Checks if getRange() was called
             return new ArrayList<>(); // Return null list if getRange() wasn't called
         } else {
-            List<String> filteredTitles = new ArrayList<>(); // Creates array for titles
-            for (SongInterface song : BPMSongsList) { // Filters songs with max year
-                if (song.getYear() <= maxYear) {
+            return cachedQuery(titlesKey(rangeLow, rangeHigh, maxYear), () -> {
+                List<String> filteredTitles = new ArrayList<>(); // Creates array for titles
+                // Binary searches the saved songs of every year, so a looser
+                // maxYear brings back songs that a stricter one left out
+                for (SongInterface song : savedSelection(maxYear).upToYear(maxYear)) {
                     filteredTitles.add(song.getTitle());
                 }
-            }
-            // Reverses list so its in ascending order
-            List<String> filteredOrdered = new ArrayList<>();
-            for (int i = filteredTitles.size() - 1; i >= 0; i--) {
-                filteredOrdered.add(filteredTitles.get(i));
-            }
-            return filteredTitles; // returns titles after filtered old songs
+                return filteredTitles; // returns titles after filtered old songs
+            });
         }
     }
 
@@ -170,33 +832,159 @@ public class Backend implements BackendInterface {
      */
     @Override
     public List<String> fiveMostDanceable() {
+        // Most danceable first, so reversed into increasing order
+        List<String> top5DanceableTitles = topK(SongAttribute.DANCEABILITY, 5, false);
+        Collections.reverse(top5DanceableTitles);
+        return top5DanceableTitles;
+    }
+
+    /**
+     * Finds the k songs with the smallest (or largest) value of attribute
+     * among the songs saved by the most recent call to getRange(), with the
+     * maxYear filter of filterOldSongs() applied. The saved songs are read
+     * once in BPM order and offered to a bounded heap of k songs, so this
+     * takes O(n log k) time and O(k) memory for n saved songs. When songTree
+     * is an AugmentedSongTree that keeps the range of attribute per subtree,
+     * its best-first search is used instead, which does not depend on n.
+     * Results are cached, so repeating a ranking returns without reading songs.
+     *
+     * @param attribute is the attribute to rank songs by
+     * @param k         is the most songs to return
+     * @param ascending is true for the smallest values, false for the largest
+     * @return List of "value: title" strings, best first, and songs with the
+     *     same value in order of BPM
+     * @throws IllegalStateException when getRange() was not previously called
+     * @throws IllegalArgumentException when k is negative
+     */
+    @Override
+    public List<String> topK(SongAttribute attribute, int k, boolean ascending) {
         if (!isGetRangeCalled) { // Throws exception if getRange() wasn't previously called
             throw new IllegalStateException();
         }
+        if (k < 0) {
+            throw new IllegalArgumentException("k cannot be negative: " + k);
+        }
+        return cachedQuery(List.of("topK", attribute, k, ascending, rangeLow, rangeHigh, maxYearFilter),
+                () -> rankSavedSongs(attribute, k, ascending));
+    }
 
-        // Filters max year
-        List<SongInterface> songsToFilter = new ArrayList<>();
-        for (SongInterface song : BPMSongsList) {
-            if (song.getYear() <= maxYearFilter) {
-                songsToFilter.add(song);
+    /**
+     * Finds the result of topK() without the cache.
+     */
+    private List<String> rankSavedSongs(SongAttribute attribute, int k, boolean ascending) {
+        if (songTree instanceof AugmentedSongTree && ((AugmentedSongTree) songTree).isAugmented(attribute)) {
+            // Best-first search of the tree, which skips subtrees that cannot hold a top song
+            int maxYear = maxYearFilter;
+            List<String> ranked = new ArrayList<>();
+            for (SongInterface song : ((AugmentedSongTree) songTree).topK(attribute, k, ascending,
+                    bpmAtLeast(rangeLow), bpmAtMost(rangeHigh), song -> song.getYear() <= maxYear)) {
+                ranked.add(attribute.of(song) + ": " + song.getTitle());
             }
+            return ranked;
         }
 
-        // Sorts songs in order of danceability
-        songsToFilter.sort(Comparator.comparingInt(SongInterface::getDanceability).reversed());
+        List<SongInterface> songs = savedSelection(maxYearFilter).upToYear(maxYearFilter);
+        Comparator<SongInterface> ranking = Comparator.comparingInt(attribute::of);
+        TopK<SongInterface> top = new TopK<>(Math.min(k, songs.size()),
+                ascending ? ranking : ranking.reversed());
+        for (SongInterface song : songs) {
+            top.offer(song);
+        }
 
-        // Adds and returns top 5 danceable titles in a list
-        List<String> top5DanceableTitlesTemp = new ArrayList<>();
-        for (int i = 0; i < Math.min(5, songsToFilter.size()); i++) {
-            SongInterface song = songsToFilter.get(i);
-            top5DanceableTitlesTemp.add(song.getDanceability() + ": " + song.getTitle());
+        List<String> ranked = new ArrayList<>();
+        for (SongInterface song : top.toList()) {
+            ranked.add(attribute.of(song) + ": " + song.getTitle());
         }
+        return ranked;
+    }
 
-        // Reverses list so its in ascending order
-        List<String> top5DanceableTitles = new ArrayList<>();
-        for (int i = top5DanceableTitlesTemp.size() - 1; i >= 0; i--) {
-            top5DanceableTitles.add(top5DanceableTitlesTemp.get(i));
+    /**
+     * Retrieves the songs that match query, in its order and page, as the
+     * strings chosen by its select(). The predicates are pushed down to the
+     * cheapest access path: the BPM range of songTree, the range of a
+     * secondary index, or the genre word bitmaps, whichever the planner
+     * counts the fewest songs for, and every other predicate is checked
+     * against the songs that path visits. Without an order the scan stops at
+     * the end of the page, and with an order a bounded heap keeps only the
+     * first offset + limit songs. When songTree is an AugmentedSongTree that
+     * keeps the range of the only ordering attribute, and the BPM range is
+     * the cheapest access path, its best-first search finds the page
+     * instead. Does not save anything for later use by the other methods
+     * defined in this class.
+     *
+     * @param query describes the songs to return
+     * @return List of the selected values and titles of the songs in the page
+     */
+    @Override
+    public List<String> query(SongQuery query) {
+        List<Constraint> constraints = new ArrayList<>();
+        for (SongAttribute attribute : SongAttribute.values()) {
+            if (query.isConstrained(attribute)) {
+                constraints.add(new Constraint(attribute, query.low(attribute), query.high(attribute)));
+            }
         }
-        return top5DanceableTitles;
+        Constraint[] constrained = constraints.toArray(new Constraint[0]);
+        int end = query.end();
+        Comparator<SongInterface> order = query.comparator();
+
+        List<SongInterface> songs;
+        RoaringBitmap rows = genreRows(query);
+        if (order == null) {
+            songs = findSongs(rows, query::matchesGenres, end, constrained);
+        } else if (query.orderings().size() == 1 && query.limit() < Integer.MAX_VALUE
+                && songTree instanceof AugmentedSongTree
+                && ((AugmentedSongTree) songTree).isAugmented(query.orderings().get(0).attribute)
+                && isBPMRangeCheapest(rows, constrained, query)) {
+            // Best-first search of the tree, which skips subtrees that cannot hold a song of the page
+            SongQuery.Ordering ordering = query.orderings().get(0);
+            songs = ((AugmentedSongTree) songTree).topK(ordering.attribute, end, ordering.ascending,
+                    bpmAtLeast(query.low(SongAttribute.BPM)), bpmAtMost(query.high(SongAttribute.BPM)),
+                    query::matches);
+            lastScanAttribute = ordering.attribute;
+        } else {
+            List<SongInterface> matches = findSongs(rows, query::matchesGenres, Integer.MAX_VALUE, constrained);
+            TopK<SongInterface> top = new TopK<>(Math.min(end, matches.size()), order);
+            for (SongInterface song : matches) {
+                top.offer(song);
+            }
+            songs = top.toList();
+        }
+
+        List<String> results = new ArrayList<>();
+        for (int i = query.offset(); i < songs.size(); i++) {
+            results.add(query.project(songs.get(i)));
+        }
+        return results;
+    }
+
+    /**
+     * @return true when the planner counts no more songs in the BPM range of
+     *     query (every song, when BPM is not constrained) than for any other
+     *     access path, so that a search of songTree is the cheapest plan
+     */
+    private boolean isBPMRangeCheapest(RoaringBitmap rows, Constraint[] constraints, SongQuery query) {
+        int cost = scanCost(new Constraint(SongAttribute.BPM, query.low(SongAttribute.BPM), query.high(SongAttribute.BPM)));
+        for (Constraint constraint : constraints) {
+            if (scanCost(constraint) < cost) {
+                return false;
+            }
+        }
+        return rows == null || rows.cardinality() >= cost;
+    }
+
+    /**
+     * @return the bitmap index rows of the songs in the genre and BPM range of
+     *     query, null when query has no genre words
+     */
+    private RoaringBitmap genreRows(SongQuery query) {
+        if (query.getGenres() == null) {
+            return null;
+        }
+        BitmapIndex index = bitmapIndex();
+        RoaringBitmap rows = index.genreWords(query.getGenres());
+        if (query.isConstrained(SongAttribute.BPM)) {
+            rows = rows.and(index.bpmBetween(query.low(SongAttribute.BPM), query.high(SongAttribute.BPM)));
+        }
+        return rows;
     }
 }
@@ -2,18 +2,30 @@ import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import javax.swing.*;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class BackendDeveloperTests {
 
-    private IterableSortedCollection<SongInterface> songTree = new ISCPlaceholder<>();
+    // the collections that App can store songs in
+    private static final String[] TREES = {"redblack", "array", "bplus", "persistent", "concurrent", "bucketed", "augmented"};
+
+    private IterableSortedCollection<SongInterface> songTree = new IterableRedBlackTree<>();
 
     /**
      * Tests if readData method correctly loads data from csv file, and throws exceptions for
@@ -43,6 +55,99 @@ public class BackendDeveloperTests {
         }
     }
 
+    /**
+     * Tests if the memory-mapped loader used by readData produces the same songs, in the
+     * same order, as the original Scanner based loader. The Scanner stops at the first
+     * byte it cannot decode, so only the rows it reads are compared.
+     */
+    @Test
+    public void testReadDataMatchesScanner() throws IOException {
+        ISCPlaceholder<SongInterface> mappedTree = new ISCPlaceholder<>();
+        ISCPlaceholder<SongInterface> scannerTree = new ISCPlaceholder<>();
+        new Backend(mappedTree).readData("songs.csv");
+        new Backend(scannerTree).readDataWithScanner("songs.csv");
+
+        // The mapped loader should read every row the Scanner reads, and the rest of the file
+        assertTrue(scannerTree.size() > 0, "Scanner should read some songs");
+        assertEquals(600, mappedTree.size(), "Mapped loader should read every row");
+
+        // Every field of every song should match
+        Iterator<SongInterface> mapped = mappedTree.iterator();
+        Iterator<SongInterface> scanned = scannerTree.iterator();
+        while (scanned.hasNext()) {
+            assertSameSong(scanned.next(), mapped.next());
+        }
+    }
+
+    /**
+     * Tests if parsing songs.csv in many small chunks on a fork/join pool gives the same
+     * songs, in the same order, as parsing it on a single thread
+     */
+    @Test
+    public void testParallelReadMatchesSerial() throws IOException {
+        MappedSongReader reader = new MappedSongReader("songs.csv");
+        List<SongInterface> serial = reader.readSongs();
+        // Small chunks so that many boundaries fall next to quoted titles
+        ForkJoinPool pool = new ForkJoinPool(4);
+        List<SongInterface> parallel;
+        try {
+            parallel = reader.readSongsParallel(pool, 512);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(serial.size(), parallel.size(), "Parallel read a different number of songs");
+        for (int i = 0; i < serial.size(); i++) {
+            assertSameSong(serial.get(i), parallel.get(i));
+        }
+
+        // Loading through the backend in parallel mode should fill the tree the same way
+        ISCPlaceholder<SongInterface> tree = new ISCPlaceholder<>();
+        Backend backend = new Backend(tree);
+        backend.setParallelIngestion(true);
+        backend.readData("songs.csv");
+        assertEquals(serial.size(), tree.size(), "Parallel readData lost songs");
+    }
+
+    /**
+     * Asserts that every attribute of the two songs is the same
+     */
+    private static void assertSameSong(SongInterface expected, SongInterface actual) {
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getArtist(), actual.getArtist());
+        assertEquals(expected.getGenres(), actual.getGenres());
+        assertEquals(expected.getYear(), actual.getYear());
+        assertEquals(expected.getBPM(), actual.getBPM());
+        assertEquals(expected.getEnergy(), actual.getEnergy());
+        assertEquals(expected.getDanceability(), actual.getDanceability());
+        assertEquals(expected.getLoudness(), actual.getLoudness());
+        assertEquals(expected.getLiveness(), actual.getLiveness());
+    }
+
+    /**
+     * Tests if quoted titles keep their commas and lose their quote characters when read
+     * through the memory-mapped loader
+     */
+    @Test
+    public void testMappedReaderQuotes() throws IOException {
+        File file = File.createTempFile("quotes", ".csv");
+        file.deleteOnExit();
+        try (PrintStream out = new PrintStream(file)) {
+            out.print("title,artist,top genre,year,bpm,nrgy,dnce,dB,live\r\n");
+            out.print("\"Hey, Soul Sister\",Train,neo mellow,2010,97,89,67,-4,8,80\r\n");
+            out.print("\"Happy - From \"\"Despicable Me 2\"\"\",Pharrell Williams,dance pop,2014,160,82,65,-5,9");
+        }
+
+        List<SongInterface> songs = new MappedSongReader(file.getPath()).readSongs();
+
+        // Both rows should be read, including the last one without a line break
+        assertEquals(2, songs.size(), "Both rows should be read");
+        assertEquals("Hey, Soul Sister", songs.get(0).getTitle(), "Comma in quotes not kept");
+        assertEquals(-4, songs.get(0).getLoudness(), "Negative value not parsed");
+        assertEquals("Happy - From Despicable Me 2", songs.get(1).getTitle(), "Quotes not removed");
+        assertEquals(9, songs.get(1).getLiveness(), "Last value not parsed");
+    }
+
     /**
      * Tests if songs in range of BPM match expected values, and is in ascending order
      *
@@ -102,6 +207,656 @@ public class BackendDeveloperTests {
         assertEquals("Song 1", songsInRange.get(1), "Second song not correct");
     }
 
+    /**
+     * Tests if songs with the same BPM are all kept and ordered by year then title, and
+     * that getRange only returns the songs between low and high
+     */
+    @Test
+    public void testRangeOrderingWithDuplicateBPM() {
+        // Creating songs that share a BPM, inserted out of order
+        songTree.insert(new Song("B", "Artist 1", "genre 1", 2012, 120, 50, 50, -5, 10));
+        songTree.insert(new Song("C", "Artist 1", "genre 1", 2011, 120, 50, 50, -5, 10));
+        songTree.insert(new Song("A", "Artist 1", "genre 1", 2012, 120, 50, 50, -5, 10));
+        songTree.insert(new Song("Slow", "Artist 2", "genre 1", 2010, 90, 50, 50, -5, 10));
+        songTree.insert(new Song("Fast", "Artist 2", "genre 1", 2010, 150, 50, 50, -5, 10));
+        Backend backend = new Backend(songTree);
+
+        // All three songs at 120 BPM should be found, ordered by year then title
+        assertEquals(List.of("C", "A", "B"), backend.getRange(100, 140));
+        // Boundaries should be inclusive
+        assertEquals(List.of("Slow", "C", "A", "B", "Fast"), backend.getRange(90, 150));
+        assertEquals(List.of(), backend.getRange(121, 149));
+    }
+
+    /**
+     * Tests if counting and paging through a BPM range matches the full getRange list, with
+     * and without a maxYear filter, with every collection that App can use
+     */
+    @Test
+    public void testCountAndPagedRange() throws IOException {
+        for (String tree : TREES) {
+            songTree = App.createTree(tree);
+            checkCountAndPagedRange(tree);
+        }
+    }
+
+    private void checkCountAndPagedRange(String tree) throws IOException {
+        Backend backend = new Backend(songTree);
+        backend.readData("songs.csv");
+
+        // Without a filter, counting and paging use positions in the tree or one walk of the range
+        List<String> all = backend.getRange(100, 130);
+        assertEquals(all.size(), backend.countInRange(100, 130), tree + ": count does not match getRange");
+        assertEquals(all.subList(0, 10), backend.getRange(100, 130, 0, 10), tree + ": first page not correct");
+        assertEquals(all.subList(10, 15), backend.getRange(100, 130, 10, 5), tree + ": second page not correct");
+        assertEquals(all.subList(all.size() - 3, all.size()), backend.getRange(100, 130, all.size() - 3, 10),
+                tree + ": last page not correct");
+        assertEquals(List.of(), backend.getRange(100, 130, all.size(), 10), tree + ": page past the end should be empty");
+
+        // With a filter, counting and paging only include older songs
+        List<String> old = backend.filterOldSongs(2012);
+        List<String> oldInRange = backend.getRange(100, 130);
+        assertEquals(old, oldInRange);
+        assertEquals(oldInRange.size(), backend.countInRange(100, 130), tree + ": filtered count not correct");
+        assertEquals(oldInRange.subList(3, 8), backend.getRange(100, 130, 3, 5), tree + ": filtered page not correct");
+    }
+
+    /**
+     * Tests if removing and correcting songs updates later queries, including the song list
+     * saved by getRange, without reloading the data
+     */
+    @Test
+    public void testRemoveAndUpdateSong() {
+        SongInterface song1 = new Song("Song 1", "Artist 1", "genre 1", 2010, 120, 50, 60, -5, 10);
+        SongInterface song2 = new Song("Song 2", "Artist 2", "genre 1", 2011, 125, 50, 70, -5, 10);
+        SongInterface song3 = new Song("Song 3", "Artist 3", "genre 1", 2012, 130, 50, 80, -5, 10);
+        songTree.insert(song1);
+        songTree.insert(song2);
+        songTree.insert(song3);
+        Backend backend = new Backend(songTree);
+        backend.getRange(100, 140);
+
+        // Removing a song, with an equal copy of it
+        assertTrue(backend.removeSong(new Song("Song 2", "Artist 2", "genre 1", 2011, 125, 50, 70, -5, 10)));
+        assertFalse(backend.removeSong(song2), "Song 2 was already removed");
+        assertEquals(List.of("Song 1", "Song 3"), backend.filterOldSongs(2020));
+
+        // Correcting the BPM of a song moves it within the range
+        SongInterface corrected = new Song("Song 3", "Artist 3", "genre 1", 2012, 110, 50, 80, -5, 10);
+        assertTrue(backend.updateSong(song3, corrected));
+        assertEquals(List.of("Song 3", "Song 1"), backend.getRange(100, 140));
+        assertEquals(List.of("60: Song 1", "80: Song 3"), backend.fiveMostDanceable());
+        assertEquals(2, songTree.size());
+    }
+
+    /**
+     * Tests if the planner drives a narrow year filter from the year index and a wide range
+     * from the song tree, and if both plans and the danceability index give the same results
+     * as filtering every song
+     */
+    @Test
+    public void testSecondaryIndexPlanner() throws IOException {
+        Backend backend = new Backend(songTree);
+        backend.readData("songs.csv");
+
+        // Without a year filter, the BPM range is the smallest
+        assertEquals(songTree.size(), backend.getRange(0, 300).size());
+        assertEquals(SongAttribute.BPM, backend.getLastScanAttribute());
+        // With every song saved, the five most danceable should match sorting every song
+        List<SongInterface> allSongs = new ArrayList<>();
+        songTree.forEach(allSongs::add);
+        assertEquals(fiveMostDanceable(allSongs), backend.fiveMostDanceable());
+
+        // Expected results, found by checking every song
+        List<SongInterface> expected = new ArrayList<>();
+        List<String> expectedTitles = new ArrayList<>();
+        for (SongInterface song : songTree) {
+            if (song.getYear() <= 2010 && song.getBPM() >= 80) {
+                expected.add(song);
+                expectedTitles.add(song.getTitle());
+            }
+        }
+
+        // A narrow year filter should be driven by the year index, and keep BPM order
+        backend.filterOldSongs(2010);
+        assertEquals(expectedTitles, backend.getRange(80, 300));
+        assertEquals(SongAttribute.YEAR, backend.getLastScanAttribute());
+        assertEquals(expectedTitles.size(), backend.countInRange(80, 300));
+        assertEquals(fiveMostDanceable(expected), backend.fiveMostDanceable());
+
+        // Songs inserted straight into the tree should be picked up by the indexes
+        songTree.insert(new Song("New", "Artist", "genre", 2009, 100, 50, 50, -5, 10));
+        assertTrue(backend.getRange(100, 100).contains("New"));
+        // A single BPM holds fewer songs than the years up to 2010
+        assertEquals(SongAttribute.BPM, backend.getLastScanAttribute());
+    }
+
+    /**
+     * Tests if filterSongs() and the saved selection, answered by intersecting bitmaps,
+     * give the same songs as checking every song, and if they follow removals
+     */
+    @Test
+    public void testBitmapFilters() throws IOException {
+        Backend backend = new Backend(songTree);
+        backend.readData("songs.csv");
+        String genre = songTree.iterator().next().getGenres();
+
+        List<String> expected = new ArrayList<>();
+        for (SongInterface song : songTree) {
+            if (song.getBPM() >= 90 && song.getBPM() <= 130 && song.getYear() <= 2015
+                    && song.getGenres().equals(genre)) {
+                expected.add(song.getTitle());
+            }
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, backend.filterSongs(90, 130, 2015, genre));
+        assertTrue(backend.filterSongs(90, 130, 2015, null).containsAll(expected));
+        assertTrue(backend.filterSongs(130, 90, 2015, null).isEmpty());
+        assertTrue(backend.filterSongs(0, 300, 2015, "no such genre").isEmpty());
+
+        // The saved range intersected with a year cap, after a song is removed
+        backend.getRange(90, 130);
+        SongInterface removed = songTree.rangeIterator(null, true, null, true).next();
+        backend.removeSong(removed);
+        List<SongInterface> saved = new ArrayList<>();
+        List<String> savedTitles = new ArrayList<>();
+        for (SongInterface song : songTree) {
+            if (song.getBPM() >= 90 && song.getBPM() <= 130 && song.getYear() <= 2012) {
+                saved.add(song);
+                savedTitles.add(song.getTitle());
+            }
+        }
+        assertEquals(savedTitles, backend.filterOldSongs(2012));
+        assertEquals(fiveMostDanceable(saved), backend.fiveMostDanceable());
+    }
+
+    /**
+     * Tests if getRange() with a genre finds the same songs as checking the genre words
+     * of every song, combined with the BPM range and the maxYear filter
+     */
+    @Test
+    public void testGetRangeByGenre() throws IOException {
+        Backend backend = new Backend(songTree);
+        backend.readData("songs.csv");
+        backend.filterOldSongs(2015);
+
+        for (String genre : new String[] {"pop", "Dance Pop", "hip hop", "pop dance", "r&b", "rock", "", "nothing"}) {
+            List<String> words = List.of(genre.toLowerCase().split(" "));
+            List<String> expected = new ArrayList<>();
+            for (SongInterface song : songTree) {
+                List<String> songWords = List.of(song.getGenres().split(" "));
+                if (song.getBPM() >= 95 && song.getBPM() <= 125 && song.getYear() <= 2015
+                        && (genre.isEmpty() || songWords.containsAll(words))) {
+                    expected.add(song.getTitle());
+                }
+            }
+            assertEquals(expected, backend.getRange(95, 125, genre), "genre " + genre);
+        }
+        assertTrue(backend.getRange(95, 125, "pop").size() > backend.getRange(95, 125, "dance pop").size());
+        // Does not replace the saved range
+        assertEquals(new ArrayList<>(), backend.filterOldSongs(2015));
+    }
+
+    /**
+     * Tests if the statistics of BPM ranges match those found by looping over the songs
+     * of each range, and if they follow removals
+     */
+    @Test
+    public void testRangeStatistics() throws IOException {
+        Backend backend = new Backend(songTree);
+        backend.readData("songs.csv");
+
+        int[][] ranges = {{100, 130}, {0, 1000}, {97, 97}, {131, 130}, {-50, 60}, {Integer.MIN_VALUE, Integer.MAX_VALUE}};
+        for (int[] range : ranges) {
+            SongStatistics statistics = backend.rangeStatistics(range[0], range[1]);
+            int count = 0;
+            long danceability = 0;
+            int maxEnergy = Integer.MIN_VALUE;
+            int minLoudness = Integer.MAX_VALUE;
+            for (SongInterface song : songTree) {
+                if (song.getBPM() >= range[0] && song.getBPM() <= range[1]) {
+                    count++;
+                    danceability += song.getDanceability();
+                    maxEnergy = Math.max(maxEnergy, song.getEnergy());
+                    minLoudness = Math.min(minLoudness, song.getLoudness());
+                }
+            }
+            String message = "BPM " + range[0] + " - " + range[1];
+            assertEquals(count, statistics.count(), message);
+            assertEquals(danceability, statistics.sum(SongAttribute.DANCEABILITY), message);
+            if (count > 0) {
+                assertEquals((double) danceability / count, statistics.average(SongAttribute.DANCEABILITY), 1e-9);
+                assertEquals(maxEnergy, statistics.max(SongAttribute.ENERGY), message);
+                assertEquals(minLoudness, statistics.min(SongAttribute.LOUDNESS), message);
+            } else {
+                assertTrue(Double.isNaN(statistics.average(SongAttribute.DANCEABILITY)), message);
+            }
+        }
+        assertEquals(songTree.size(), backend.rangeStatistics(0, 1000).count());
+
+        int before = backend.rangeStatistics(100, 130).count();
+        backend.removeSong(songTree.rangeIterator(song -> 100 > song.getBPM() ? 1 : -1, true, null, true).next());
+        assertEquals(before - 1, backend.rangeStatistics(100, 130).count());
+
+        // Outlying BPM values only add leaves for the values that occur
+        BPMSegmentTree outliers = new BPMSegmentTree(List.of(
+                new Song("Min", "Artist", "genre", 2000, Integer.MIN_VALUE, 10, 10, -5, 10),
+                new Song("Zero", "Artist", "genre", 2000, 0, 20, 20, -5, 10),
+                new Song("Zero again", "Artist", "genre", 2000, 0, 30, 30, -5, 10),
+                new Song("Fast", "Artist", "genre", 2000, 99999, 40, 40, -5, 10),
+                new Song("Max", "Artist", "genre", 2000, Integer.MAX_VALUE, 50, 50, -5, 10)));
+        assertEquals(5, outliers.statistics(Integer.MIN_VALUE, Integer.MAX_VALUE).count());
+        assertEquals(90, outliers.statistics(0, 99999).sum(SongAttribute.DANCEABILITY));
+        assertEquals(40, outliers.statistics(1, Integer.MAX_VALUE - 1).max(SongAttribute.ENERGY));
+        assertEquals(0, outliers.statistics(1, 99998).count());
+        assertEquals(0, new BPMSegmentTree(List.of()).statistics(0, 100).count());
+    }
+
+    /**
+     * Tests if repeated queries are answered from the cache with the same results, if
+     * the least recently used result is evicted, and if loading or removing songs
+     * drops the cached results, with every collection that App can use
+     */
+    @Test
+    public void testQueryCache() throws IOException {
+        for (String tree : TREES) {
+            songTree = App.createTree(tree);
+            checkQueryCache(tree);
+        }
+    }
+
+    private void checkQueryCache(String tree) throws IOException {
+        Backend backend = new Backend(songTree);
+        backend.readData("songs.csv");
+        backend.setCacheCapacity(2);
+
+        List<String> range = backend.getRange(90, 120);
+        List<String> danceable = backend.fiveMostDanceable();
+        assertEquals(0, backend.getCacheHits());
+        assertEquals(2, backend.getCacheMisses());
+        assertEquals(range, backend.getRange(90, 120));
+        assertEquals(danceable, backend.fiveMostDanceable());
+        assertEquals(2, backend.getCacheHits());
+
+        // Returned lists are copies, so changing one does not change the cache
+        backend.getRange(90, 120).clear();
+        assertEquals(range, backend.getRange(90, 120));
+        assertEquals(4, backend.getCacheHits());
+
+        // filterOldSongs() shares results with getRange() for the same songs
+        List<String> old = backend.filterOldSongs(2012);
+        assertEquals(old, backend.getRange(90, 120));
+        assertEquals(5, backend.getCacheHits());
+        // With room for two results, the least recently used one is evicted
+        long hits = backend.getCacheHits();
+        long misses = backend.getCacheMisses();
+        backend.getRange(60, 80);
+        backend.getRange(81, 100);
+        backend.getRange(60, 80); // now used more recently than 81 - 100
+        backend.getRange(101, 120); // evicts 81 - 100
+        backend.getRange(60, 80);
+        backend.getRange(81, 100);
+        assertEquals(hits + 2, backend.getCacheHits());
+        assertEquals(misses + 4, backend.getCacheMisses());
+
+        // Removing a song drops every cached result
+        List<String> before = backend.getRange(90, 120);
+        SongInterface removed = null;
+        for (SongInterface song : songTree) {
+            if (removed == null && song.getBPM() >= 90 && song.getBPM() <= 120 && song.getYear() <= 2012) {
+                removed = song;
+            }
+        }
+        backend.removeSong(removed);
+        misses = backend.getCacheMisses();
+        assertEquals(before.size() - 1, backend.getRange(90, 120).size(), tree);
+        assertEquals(misses + 1, backend.getCacheMisses(), tree);
+
+        // So does removing a song straight from the tree
+        Iterator<SongInterface> songs = songTree.rangeIterator(song -> 90 > song.getBPM() ? 1 : -1, true, null, true);
+        do {
+            removed = songs.next();
+        } while (removed.getYear() > 2012);
+        before = backend.getRange(90, 120);
+        assertTrue(songTree.remove(removed), tree);
+        assertEquals(before.size() - 1, backend.getRange(90, 120).size(), tree);
+    }
+
+    /**
+     * Tests if the bitmaps, the secondary indexes and the cache notice a remove and
+     * an insert made straight into the tree, although they keep its size, with every
+     * collection that App can use
+     */
+    @Test
+    public void testChangesThatKeepSize() throws IOException {
+        for (String tree : TREES) {
+            songTree = App.createTree(tree);
+            checkChangesThatKeepSize(tree);
+        }
+    }
+
+    private void checkChangesThatKeepSize(String tree) throws IOException {
+        Backend backend = new Backend(songTree);
+        backend.readData("songs.csv");
+        List<String> cached = backend.getRange(100, 100);
+        List<String> genre = backend.getRange(100, 100, "pop");
+        SongInterface removed = songTree.rangeIterator(song -> 100 > song.getBPM() ? 1 : -1, true, null, true).next();
+        assertEquals(100, removed.getBPM());
+
+        int size = songTree.size();
+        songTree.remove(removed);
+        songTree.insert(new Song("Replacement", "Artist", "pop", 2000, 100, 50, 50, -5, 10));
+        assertEquals(size, songTree.size(), tree);
+        assertTrue(backend.getRange(100, 100).contains("Replacement"), tree);
+        assertEquals(cached.size(), backend.getRange(100, 100).size(), tree);
+        assertTrue(backend.getRange(100, 100, "pop").contains("Replacement"), tree);
+        assertEquals(genre.size() + (List.of(BitmapIndex.splitGenres(removed.getGenres())).contains("pop") ? 0 : 1),
+                backend.getRange(100, 100, "pop").size(), tree);
+        backend.filterOldSongs(2000);
+        assertTrue(backend.getRange(100, 100).contains("Replacement"), tree);
+        assertEquals(SongAttribute.BPM, backend.getLastScanAttribute(), tree);
+    }
+
+    /**
+     * Tests if tightening and loosening filterOldSongs() over a saved range matches
+     * filtering every song, including songs that a stricter earlier filter left out,
+     * and if the saved songs follow removed songs
+     */
+    @Test
+    public void testRefineYearFilter() throws IOException {
+        int[] scans = {0};
+        songTree = new IterableRedBlackTree<>() {
+            @Override
+            public Iterator<SongInterface> rangeIterator(Comparable<SongInterface> lowerBound, boolean lowerInclusive,
+                                                         Comparable<SongInterface> upperBound, boolean upperInclusive) {
+                scans[0]++;
+                return super.rangeIterator(lowerBound, lowerInclusive, upperBound, upperInclusive);
+            }
+        };
+        Backend backend = new Backend(songTree);
+        backend.readData("songs.csv");
+        backend.setCacheCapacity(0);
+
+        // The BPM range drives getRange(), which saves its songs of every year
+        backend.filterOldSongs(2018);
+        scans[0] = 0;
+        List<String> range = backend.getRange(90, 130);
+        assertEquals(1, scans[0], "getRange() should scan once");
+        assertEquals(SongAttribute.BPM, backend.getLastScanAttribute());
+        assertEquals(expectedTitles(90, 130, 2018), range);
+        for (int maxYear : new int[] {2015, 2009, 2019, 1999, 2012, 2030}) {
+            scans[0] = 0;
+            List<String> titles = backend.filterOldSongs(maxYear);
+            assertEquals(0, scans[0], "maxYear " + maxYear + " scanned the tree");
+            assertEquals(expectedTitles(90, 130, maxYear), titles, "maxYear " + maxYear);
+        }
+        assertTrue(backend.filterOldSongs(2019).size() > backend.filterOldSongs(2011).size());
+
+        // The year index drives getRange(), so only a looser year scans the range once more
+        backend.filterOldSongs(2011);
+        assertEquals(expectedTitles(0, 300, 2011), backend.getRange(0, 300));
+        assertEquals(SongAttribute.YEAR, backend.getLastScanAttribute());
+        List<String> expected2010 = expectedTitles(0, 300, 2010);
+        List<String> expected2012 = expectedTitles(0, 300, 2012);
+        scans[0] = 0;
+        assertEquals(expected2010, backend.filterOldSongs(2010));
+        assertEquals(0, scans[0], "a stricter year should not scan");
+        assertEquals(expected2012, backend.filterOldSongs(2012));
+        assertEquals(1, scans[0], "only a looser year should scan");
+        backend.filterOldSongs(2011);
+        assertEquals(1, scans[0], "the looser year saved every song of the range");
+
+        backend.getRange(90, 130);
+
+        SongInterface removed = songTree.rangeIterator(song -> 100 > song.getBPM() ? 1 : -1, true, null, true).next();
+        backend.removeSong(removed);
+        assertEquals(expectedTitles(90, 130, 2019), backend.filterOldSongs(2019));
+        assertEquals(expectedTitles(200, 100, 2019), backend.getRange(200, 100));
+        assertEquals(expectedTitles(200, 100, 2019), backend.filterOldSongs(2030));
+    }
+
+    /**
+     * Tests if query() matches filtering, stably sorting and paging every song for
+     * several queries, if the planner drives genre queries by the genre bitmaps, and
+     * if an AugmentedSongTree answers ordered queries the same way
+     */
+    @Test
+    public void testComposableQuery() throws IOException {
+        Backend backend = new Backend(songTree);
+        backend.readData("songs.csv");
+        AugmentedSongTree augmentedTree = new AugmentedSongTree();
+        Backend augmented = new Backend(augmentedTree);
+        augmented.readData("songs.csv");
+
+        List<SongQuery> queries = List.of(
+                new SongQuery(),
+                new SongQuery().where(SongAttribute.BPM, 90, 130).where(SongAttribute.YEAR, 0, 2014).limit(7),
+                new SongQuery().where(SongAttribute.BPM, 80, 200).whereGenre("Canadian POP")
+                        .select(SongAttribute.BPM, SongAttribute.YEAR),
+                new SongQuery().where(SongAttribute.ENERGY, 60, 90).orderBy(SongAttribute.DANCEABILITY, false)
+                        .offset(3).limit(10).select(SongAttribute.DANCEABILITY),
+                new SongQuery().where(SongAttribute.LIVENESS, 10, 40).orderBy(SongAttribute.YEAR, true)
+                        .orderBy(SongAttribute.LOUDNESS, false).limit(25),
+                new SongQuery().whereGenre("pop").orderBy(SongAttribute.DANCEABILITY, true).limit(4),
+                new SongQuery().where(SongAttribute.YEAR, 2010, 2010).orderBy(SongAttribute.DANCEABILITY, false).limit(5),
+                new SongQuery().where(SongAttribute.BPM, 100, 104).orderBy(SongAttribute.DANCEABILITY, false).limit(3),
+                new SongQuery().where(SongAttribute.BPM, 130, 90));
+        for (SongQuery query : queries) {
+            List<SongInterface> expected = new ArrayList<>();
+            for (SongInterface song : songTree) {
+                if (query.matches(song)) {
+                    expected.add(song);
+                }
+            }
+            if (query.comparator() != null) {
+                expected.sort(query.comparator()); // List.sort is stable, so ties stay in order of BPM
+            }
+            List<String> results = new ArrayList<>();
+            for (int i = query.offset(); i < Math.min(query.end(), expected.size()); i++) {
+                results.add(query.project(expected.get(i)));
+            }
+            assertEquals(results, backend.query(query));
+            assertEquals(results, augmented.query(query));
+        }
+
+        // Few songs are canadian pop, so its bitmap is cheaper than the wide BPM range
+        backend.query(queries.get(2));
+        assertEquals(null, backend.getLastScanAttribute());
+        // The tree's best-first search only replaces the planner when the BPM range is cheapest
+        augmented.query(queries.get(6));
+        assertEquals(SongAttribute.YEAR, augmented.getLastScanAttribute());
+        augmented.query(queries.get(7));
+        assertEquals(SongAttribute.DANCEABILITY, augmented.getLastScanAttribute());
+        backend.query(queries.get(7));
+        assertEquals(SongAttribute.BPM, backend.getLastScanAttribute());
+        assertTrue(backend.query(queries.get(2)).get(0).matches("\\d+, \\d+: .+"));
+        assertThrows(IllegalArgumentException.class, () -> new SongQuery().limit(-1));
+    }
+
+    /**
+     * @return the titles of the songs of songTree with a BPM between low and high
+     *     and a year of at most maxYear, in order
+     */
+    private List<String> expectedTitles(int low, int high, int maxYear) {
+        List<String> titles = new ArrayList<>();
+        for (SongInterface song : songTree) {
+            if (low <= song.getBPM() && song.getBPM() <= high && song.getYear() <= maxYear) {
+                titles.add(song.getTitle());
+            }
+        }
+        return titles;
+    }
+
+    /**
+     * Tests if TopK keeps the first k values of a stable sort, for several k and
+     * many duplicate values
+     */
+    @Test
+    public void testMatchesStableSort() {
+        Random random = new Random(400);
+        List<int[]> values = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            values.add(new int[] {random.nextInt(50), i}); // {rank, offer order}
+        }
+        List<int[]> sorted = new ArrayList<>(values);
+        sorted.sort(Comparator.comparingInt(value -> value[0])); // List.sort is stable
+
+        for (int k : new int[] {0, 1, 5, 64, 2000, 3000}) {
+            TopK<int[]> topK = new TopK<>(k, Comparator.comparingInt(value -> value[0]));
+            values.forEach(topK::offer);
+            List<int[]> kept = topK.toList();
+            assertEquals(Math.min(k, values.size()), kept.size());
+            for (int i = 0; i < kept.size(); i++) {
+                assertSame(sorted.get(i), kept.get(i), "k = " + k + ", position " + i);
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> new TopK<Integer>(-1, Comparator.naturalOrder()));
+    }
+
+    /**
+     * Tests if topK() ranks the saved songs like a stable sort of every saved song, for
+     * both directions and several attributes
+     */
+    @Test
+    public void testTopKLeaderboards() throws IOException {
+        Backend backend = new Backend(songTree);
+        backend.readData("songs.csv");
+        assertThrows(IllegalStateException.class, () -> backend.topK(SongAttribute.ENERGY, 3, false));
+        backend.getRange(90, 140);
+        backend.filterOldSongs(2016);
+
+        List<SongInterface> saved = new ArrayList<>();
+        for (SongInterface song : songTree) {
+            if (song.getBPM() >= 90 && song.getBPM() <= 140 && song.getYear() <= 2016) {
+                saved.add(song);
+            }
+        }
+        for (SongAttribute attribute : SongAttribute.values()) {
+            for (boolean ascending : new boolean[] {true, false}) {
+                Comparator<SongInterface> ranking = Comparator.comparingInt(attribute::of);
+                List<SongInterface> sorted = new ArrayList<>(saved);
+                sorted.sort(ascending ? ranking : ranking.reversed());
+                List<String> expected = new ArrayList<>();
+                for (SongInterface song : sorted.subList(0, 7)) {
+                    expected.add(attribute.of(song) + ": " + song.getTitle());
+                }
+                assertEquals(expected, backend.topK(attribute, 7, ascending), attribute + " " + ascending);
+            }
+        }
+        assertEquals(saved.size(), backend.topK(SongAttribute.LOUDNESS, Integer.MAX_VALUE, true).size());
+        assertTrue(backend.topK(SongAttribute.LOUDNESS, 0, true).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> backend.topK(SongAttribute.ENERGY, -1, false));
+    }
+
+    /**
+     * Tests if box queries and nearest-neighbour lookups of the k-d tree give the same
+     * songs as checking every song
+     */
+    @Test
+    public void testKDTreeQueries() throws IOException {
+        Backend backend = new Backend(songTree);
+        backend.readData("songs.csv");
+
+        // BPM 110-130, energy above 80 and danceability above 70
+        int[] low = {110, 81, 71, Integer.MIN_VALUE, Integer.MIN_VALUE};
+        int[] high = {130, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE};
+        List<String> expected = new ArrayList<>();
+        for (SongInterface song : songTree) {
+            if (song.getBPM() >= 110 && song.getBPM() <= 130 && song.getEnergy() > 80
+                    && song.getDanceability() > 70) {
+                expected.add(song.getTitle());
+            }
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, backend.songsWithin(low, high));
+
+        List<SongInterface> songs = new ArrayList<>();
+        songTree.forEach(songs::add);
+        KDTree kdTree = new KDTree(songs);
+        for (int i = 0; i < songs.size(); i += 37) {
+            SongInterface song = songs.get(i);
+            // The distances of the ten closest songs, found by sorting every other song
+            List<Long> expectedDistances = new ArrayList<>();
+            for (SongInterface other : songs) {
+                if (other != song) {
+                    expectedDistances.add(distance(song, other));
+                }
+            }
+            expectedDistances.sort(null);
+            List<Long> distances = new ArrayList<>();
+            for (SongInterface similar : kdTree.nearest(song, 10)) {
+                assertTrue(similar != song, "A song should not be similar to itself");
+                distances.add(distance(song, similar));
+            }
+            assertEquals(expectedDistances.subList(0, 10), distances);
+        }
+        assertEquals(10, backend.similarSongs(songs.get(0), 10).size());
+    }
+
+    /**
+     * Tests if searchSongs() finds the same songs as comparing the words of every title
+     * and artist, for whole words, several words and the prefixes typed so far
+     */
+    @Test
+    public void testSearchSongs() throws IOException {
+        Backend backend = new Backend(songTree);
+        backend.readData("songs.csv");
+
+        for (String query : new String[] {"love", "LOVE the", "lo", "l", "b", "taylor sw",
+                "Don't", "zzz", "", "  ", "the love lov"}) {
+            String[] words = SongSearchIndex.split(query);
+            List<String> expected = new ArrayList<>();
+            for (SongInterface song : songTree) {
+                List<String> songWords = List.of(SongSearchIndex.split(song.getTitle() + " " + song.getArtist()));
+                boolean matches = words.length > 0;
+                for (int i = 0; i < words.length && matches; i++) {
+                    String word = words[i];
+                    matches = i < words.length - 1 ? songWords.contains(word)
+                            : songWords.stream().anyMatch(songWord -> songWord.startsWith(word));
+                }
+                if (matches) {
+                    expected.add(song.getTitle());
+                }
+            }
+            assertEquals(expected, backend.searchSongs(query, Integer.MAX_VALUE), "query " + query);
+            assertEquals(expected.subList(0, Math.min(3, expected.size())), backend.searchSongs(query, 3),
+                    "query " + query);
+        }
+        assertEquals(List.of("dont"), List.of(SongSearchIndex.split("Don't")));
+
+        // A removed song should not be found any more
+        SongInterface removed = songTree.iterator().next();
+        String title = removed.getTitle();
+        int before = backend.searchSongs(title, Integer.MAX_VALUE).size();
+        backend.removeSong(removed);
+        assertEquals(before - 1, backend.searchSongs(title, Integer.MAX_VALUE).size());
+    }
+
+    /**
+     * @return the squared Euclidean distance between a and b over the k-d tree's dimensions
+     */
+    private static long distance(SongInterface a, SongInterface b) {
+        long distance = 0;
+        for (SongAttribute attribute : KDTree.DIMENSIONS) {
+            long difference = attribute.of(a) - attribute.of(b);
+            distance += difference * difference;
+        }
+        return distance;
+    }
+
+    /**
+     * Finds the result fiveMostDanceable() should give for songs, by sorting all of them
+     */
+    private static List<String> fiveMostDanceable(List<SongInterface> songs) {
+        List<SongInterface> sorted = new ArrayList<>(songs);
+        sorted.sort(Comparator.comparingInt(SongInterface::getDanceability).reversed());
+        List<String> result = new ArrayList<>();
+        for (int i = Math.min(5, sorted.size()) - 1; i >= 0; i--) {
+            result.add(sorted.get(i).getDanceability() + ": " + sorted.get(i).getTitle());
+        }
+        return result;
+    }
+
     /**
      * Tests if when calling filterOldSongs without using getRange, it provides an empty list.
      */
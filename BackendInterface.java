@@ -32,6 +32,47 @@ public interface BackendInterface {
      */
     public List<String> getRange(int low, int high);
 
+    /**
+     * Retrieves one page of the list that getRange(low, high) would return:
+     * the titles at positions offset to offset + limit - 1 of that list.
+     * Unlike getRange(), this does not save the range for later use.
+     *
+     * @param low is the minimum Speed (BPM) of songs in the returned list
+     * @param high is the maximum Speed (BPM) of songs in the returned list
+     * @param offset is the number of titles to skip
+     * @param limit is the maximum number of titles to return
+     * @return List of at most limit titles of songs in specified range
+     * @throws IllegalArgumentException when offset or limit is negative
+     */
+    public List<String> getRange(int low, int high, int offset, int limit);
+
+    /**
+     * Retrieves a list of song titles for songs that have a Speed (BPM)
+     * within the specified range and whose genres contain every word of
+     * genre (sorted by BPM in ascending order), so that "pop" matches both
+     * "dance pop" and "canadian pop", and "hip hop" matches "detroit hip hop".
+     * Words are compared ignoring case. If a maxYear filter has been set
+     * using filterOldSongs(), then only songs on Billboard during or before
+     * that maxYear are included. Unlike getRange(low, high), this does not
+     * save the range for later use.
+     *
+     * @param low is the minimum Speed (BPM) of songs in the returned list
+     * @param high is the maximum Speed (BPM) of songs in the returned list
+     * @param genre is one or more genre words, any genre when it has no words
+     * @return List of titles for all songs in specified range and genre
+     */
+    public List<String> getRange(int low, int high, String genre);
+
+    /**
+     * Counts the songs that getRange(low, high) would return, without
+     * building the list of their titles. Does not save the range for later use.
+     *
+     * @param low is the minimum Speed (BPM) of songs to count
+     * @param high is the maximum Speed (BPM) of songs to count
+     * @return the number of songs in specified range
+     */
+    public int countInRange(int low, int high);
+
     /**
      * Filters the list of songs returned by future calls of getRange() and 
      * fiveMostDanceable() to only include older songs.  If getRange() was 
@@ -62,4 +103,66 @@ public interface BackendInterface {
      * @throws IllegalStateException when getRange() was not previously called.
      */
     public List<String> fiveMostDanceable();
+
+    /**
+     * This method makes use of the attribute range specified by the most
+     * recent call to getRange(), and the maxYear threshold set by
+     * filterOldSongs() if there is one, like fiveMostDanceable().  Of those
+     * songs, the k with the smallest (when ascending) or largest attribute
+     * values are returned as a List of Strings, the best first.  Each string
+     * contains the attribute value followed by a colon, a space, and then the
+     * song's title.  Songs with the same value are in increasing order of
+     * speed (bpm).  If fewer than k such songs exist, return all of them.
+     *
+     * @param attribute is the attribute to rank songs by
+     * @param k is the maximum number of songs to return
+     * @param ascending is true for the smallest values, false for the largest
+     * @return List of at most k song titles and their attribute values
+     * @throws IllegalStateException when getRange() was not previously called.
+     * @throws IllegalArgumentException when k is negative
+     */
+    public List<String> topK(SongAttribute attribute, int k, boolean ascending);
+
+    /**
+     * Removes one song that matches song in every attribute, without reloading
+     * the csv file.
+     * @param song is the song to remove
+     * @return true if a song was removed, false if no such song was loaded
+     */
+    public boolean removeSong(SongInterface song);
+
+    /**
+     * Replaces one song that matches oldSong in every attribute with newSong,
+     * without reloading the csv file.
+     * @param oldSong is the song to replace
+     * @param newSong is the corrected song that takes its place
+     * @return true if a song was replaced, false if no such song was loaded
+     */
+    public boolean updateSong(SongInterface oldSong, SongInterface newSong);
+
+    /**
+     * Retrieves the titles of songs whose title or artist contains every word
+     * of query, ignoring case (sorted by BPM in ascending order). The last
+     * word of query only has to be the beginning of a word, so that results
+     * can be shown while the query is typed. Does not save anything for
+     * later use by the other methods defined in this class.
+     *
+     * @param query is the words to search for
+     * @param limit is the maximum number of titles to return
+     * @return List of at most limit titles of matching songs
+     */
+    public List<String> searchSongs(String query, int limit);
+
+    /**
+     * Retrieves the songs that match every predicate of query, ordered by its
+     * orderings (and then by speed (bpm) in ascending order), skipping its
+     * offset and returning at most its limit.  Each string is the title of a
+     * song, after the values of the attributes selected by query, separated
+     * by commas, and a colon and a space when any are selected.  Does not
+     * depend on or save anything for the other methods defined in this class.
+     *
+     * @param query describes the songs to return
+     * @return List of at most limit strings for the matching songs
+     */
+    public List<String> query(SongQuery query);
 }
@@ -54,6 +54,51 @@ public class BackendPlaceholder implements BackendInterface {
 	    });
     }
 
+    /**
+     * Retrieves one page of the list that getRange(low, high) would return:
+     * the titles at positions offset to offset + limit - 1 of that list.
+     * Unlike getRange(), this does not save the range for later use.
+     *
+     * @param low is the minimum Speed (BPM) of songs in the returned list
+     * @param high is the maximum Speed (BPM) of songs in the returned list
+     * @param offset is the number of titles to skip
+     * @param limit is the maximum number of titles to return
+     * @return List of at most limit titles of songs in specified range
+     */
+    public List<String> getRange(int low, int high, int offset, int limit) {
+	List<String> titles = getRange(low, high);
+	// placeholder just returns a page of the hard coded list
+	return titles.subList(Math.min(offset, titles.size()),
+			      Math.min(offset + limit, titles.size()));
+    }
+
+    /**
+     * Retrieves a list of song titles for songs that have a Speed (BPM)
+     * within the specified range and whose genres contain every word of
+     * genre (sorted by BPM in ascending order).
+     *
+     * @param low is the minimum Speed (BPM) of songs in the returned list
+     * @param high is the maximum Speed (BPM) of songs in the returned list
+     * @param genre is one or more genre words, any genre when it has no words
+     * @return List of titles for all songs in specified range and genre
+     */
+    public List<String> getRange(int low, int high, String genre) {
+	// placeholder does not know the genres of its hard coded songs
+	return getRange(low, high);
+    }
+
+    /**
+     * Counts the songs that getRange(low, high) would return, without
+     * building the list of their titles.
+     *
+     * @param low is the minimum Speed (BPM) of songs to count
+     * @param high is the maximum Speed (BPM) of songs to count
+     * @return the number of songs in specified range
+     */
+    public int countInRange(int low, int high) {
+	return getRange(low, high).size();
+    }
+
     /**
      * Filters the list of songs returned by future calls of getRange() and 
      * fiveMostDanceable() to only include older songs.  If getRange() was 
@@ -98,4 +143,80 @@ public class BackendPlaceholder implements BackendInterface {
 		"75: Love The Way You Lie"
 	    });	
     }    
+
+    /**
+     * This method makes use of the attribute range specified by the most
+     * recent call to getRange(), and the maxYear threshold set by
+     * filterOldSongs() if there is one.  Of those songs, the k with the
+     * smallest (when ascending) or largest attribute values are returned as
+     * a List of Strings, the best first.  Each string contains the attribute
+     * value followed by a colon, a space, and then the song's title.
+     *
+     * @param attribute is the attribute to rank songs by
+     * @param k is the maximum number of songs to return
+     * @param ascending is true for the smallest values, false for the largest
+     * @return List of at most k song titles and their attribute values
+     */
+    public List<String> topK(SongAttribute attribute, int k, boolean ascending) {
+	// placeholder just returns a prefix of its hard coded danceable songs
+	List<String> songs = fiveMostDanceable();
+	return songs.subList(0, Math.min(k, songs.size()));
+    }
+
+    /**
+     * Removes one song that matches song in every attribute, without reloading
+     * the csv file.
+     * @param song is the song to remove
+     * @return true if a song was removed, false if no such song was loaded
+     */
+    public boolean removeSong(SongInterface song) {
+	// placeholder does not hold any songs
+	return false;
+    }
+
+    /**
+     * Replaces one song that matches oldSong in every attribute with newSong,
+     * without reloading the csv file.
+     * @param oldSong is the song to replace
+     * @param newSong is the corrected song that takes its place
+     * @return true if a song was replaced, false if no such song was loaded
+     */
+    public boolean updateSong(SongInterface oldSong, SongInterface newSong) {
+	// placeholder does not hold any songs
+	return false;
+    }
+
+    /**
+     * Retrieves the titles of songs whose title or artist contains every word
+     * of query, ignoring case (sorted by BPM in ascending order). The last
+     * word of query only has to be the beginning of a word.
+     *
+     * @param query is the words to search for
+     * @param limit is the maximum number of titles to return
+     * @return List of at most limit titles of matching songs
+     */
+    public List<String> searchSongs(String query, int limit) {
+	// placeholder just searches the hard coded list of songs
+	List<String> titles = new java.util.ArrayList<>();
+	for (String title : getRange(0, 0)) {
+	    if (titles.size() < limit && title.toLowerCase().contains(query.trim().toLowerCase())) {
+		titles.add(title);
+	    }
+	}
+	return titles;
+    }
+
+    /**
+     * Retrieves the songs that match every predicate of query, in its order
+     * and page, as the strings chosen by its select().
+     *
+     * @param query describes the songs to return
+     * @return List of at most limit strings for the matching songs
+     */
+    public List<String> query(SongQuery query) {
+	// placeholder ignores the predicates and order, and pages its hard coded titles
+	List<String> titles = getRange(0, 0);
+	int from = Math.min(query.offset(), titles.size());
+	return titles.subList(from, Math.min(query.end(), titles.size()));
+    }
 }
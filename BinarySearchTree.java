@@ -107,6 +107,55 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
         }
     }
 
+    /**
+     * Removes one value that is equal to data from the tree. No attempt is made
+     * to restructure or balance the tree after the removal.
+     * @param data a comparable for the data value to remove
+     * @return true if a value was removed, false if no such value was in the tree
+     * @throws NullPointerException when the provided data argument is null
+     */
+    public boolean remove(Comparable<T> data) throws NullPointerException {
+        if (data == null)
+            throw new NullPointerException("This tree cannot store null references.");
+        Node<T> node = this.findNode(data);
+        if (node == null) {
+            return false;
+        }
+        if (node.down[0] != null && node.down[1] != null) {
+            // a node with two children takes over its successor's value, and the
+            // successor (which has no left child) is removed in its place
+            Node<T> successor = node.down[1];
+            while (successor.down[0] != null) {
+                successor = successor.down[0];
+            }
+            node.data = successor.data;
+            node = successor;
+        }
+        replaceNode(node, node.down[0] != null ? node.down[0] : node.down[1]);
+        this.size--;
+        return true;
+    }
+
+    /**
+     * Puts replacement (which may be null) in the position of node within the
+     * tree, so that node is no longer referenced by the tree.
+     * @param node is the node being replaced
+     * @param replacement is the node that takes its place
+     */
+    protected void replaceNode(Node<T> node, Node<T> replacement) {
+        if (replacement != null) {
+            replacement.up = node.up;
+        }
+        if (node.up == null) {
+            this.root = replacement;
+        } else if (node.isRightChild()) {
+            node.up.down[1] = replacement;
+        } else {
+            node.up.down[0] = replacement;
+        }
+        node.up = null;
+    }
+
     /**
      * Performs the rotation operation on the provided nodes within this tree.
      * When the provided child is a left child of the provided parent, this
@@ -122,8 +171,6 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
      *      node references are not initially (pre-rotation) related that way
      */
     protected void rotate(Node<T> child, Node<T> parent) throws IllegalArgumentException {
-        // TODO: Implement this method.
-
         // If provided nodes are not related
         if (child == null || parent == null || child.up != parent) {
             throw new IllegalArgumentException("The provided nodes are not related as parent and child.");
@@ -215,6 +262,29 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
         }
     }
 
+    /**
+     * Computes the height of the tree: the number of nodes on the longest path
+     * from the root down to a leaf. The tree is walked level by level, so even
+     * a degenerate tree does not overflow the call stack.
+     * @return the height of the tree, 0 when the tree is empty
+     */
+    public int height() {
+        int height = 0;
+        if (this.root != null) {
+            LinkedList<Node<T>> level = new LinkedList<>();
+            level.add(this.root);
+            while (!level.isEmpty()) {
+                height++;
+                for (int i = level.size(); i > 0; i--) {
+                    Node<T> next = level.removeFirst();
+                    if (next.down[0] != null) level.add(next.down[0]);
+                    if (next.down[1] != null) level.add(next.down[1]);
+                }
+            }
+        }
+        return height;
+    }
+
     /**
      * Removes all keys from the tree.
      */
@@ -396,6 +466,56 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
         }
     }
     
+    /**
+     * Tests a right rotation below the root where both nodes have subtrees, checking that
+     * the moved subtree and every up reference are relinked
+     */
+    public static boolean test4() {
+        // Creating tree and adding values
+        BinarySearchTree<Integer> tree = new BinarySearchTree<>();
+        tree.insert(10);
+        tree.insert(5);
+        tree.insert(15);
+        tree.insert(3);
+        tree.insert(7);
+        tree.insert(1);
+        tree.insert(4);
+
+        // Right rotation of 3 into the position of 5
+        Node<Integer> parent = tree.root.down[0];
+        Node<Integer> child = parent.down[0];
+        tree.rotate(child, parent);
+
+        // 3 should now be the left child of the root, with 5 as its right child,
+        // and 4 moved over to become the left child of 5
+        boolean linked = tree.root.down[0] == child && child.up == tree.root
+                && child.down[1] == parent && parent.up == child
+                && parent.down[0] != null && parent.down[0].data == 4 && parent.down[0].up == parent;
+
+        // Return true if rotation is correct
+        return linked && tree.toInOrderString().equals("[ 1, 3, 4, 5, 7, 10, 15 ]")
+                && tree.toLevelOrderString().equals("[ 10, 3, 15, 1, 5, 4, 7 ]");
+    }
+
+    /**
+     * Tests removing a leaf, a node with one child, and the root with two children
+     */
+    public static boolean test5() {
+        // Creating tree and adding values
+        BinarySearchTree<Integer> tree = new BinarySearchTree<>();
+        for (int value : new int[] {10, 5, 15, 3, 7, 20, 6}) {
+            tree.insert(value);
+        }
+
+        // Removing a leaf, a node with one child, the root, and a missing value
+        boolean removed = tree.remove(3) && tree.remove(15) && tree.remove(10) && !tree.remove(11);
+
+        // Return true if the remaining values are still ordered and linked correctly
+        return removed && tree.size() == 4 && tree.root.up == null
+                && tree.toInOrderString().equals("[ 5, 6, 7, 20 ]")
+                && tree.toLevelOrderString().equals("[ 20, 5, 7, 6 ]");
+    }
+
     /**
      * Main method to run tests. If you'd like to add additional test methods, add a line for each
      * of them.
@@ -405,6 +525,8 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
         System.out.println("Test 1 passed: " + test1());
         System.out.println("Test 2 passed: " + test2());
         System.out.println("Test 3 passed: " + test3());
+        System.out.println("Test 4 passed: " + test4());
+        System.out.println("Test 5 passed: " + test5());
     }
 
 }
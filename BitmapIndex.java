@@ -0,0 +1,156 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PrimitiveIterator;
+import java.util.TreeMap;
+
+/**
+ * Bitmap index over a fixed list of songs. Every song gets a row number, its
+ * position in the list, and the index keeps one RoaringBitmap of row numbers
+ * per BPM value, per year and per genre. A filter on
+ * several attributes becomes unions of the bitmaps for the values in each
+ * range, intersected with each other, instead of a check of every song.
+ *
+ * Genres are free text like "detroit hip hop", so besides one bitmap per
+ * genres string there is one per genre word. The words are dictionary
+ * encoded: each distinct word gets a number, each distinct genres string is
+ * split into word numbers only once, and the word bitmaps are kept in a list
+ * by number.
+ *
+ * The songs are expected in their natural order, so that rows, and the songs
+ * returned for a bitmap, come out sorted by BPM like the song tree.
+ */
+public class BitmapIndex {
+
+    private final SongInterface[] songs;
+    private final NavigableMap<Integer, RoaringBitmap> byBPM = new TreeMap<>();
+    private final NavigableMap<Integer, RoaringBitmap> byYear = new TreeMap<>();
+    private final Map<String, RoaringBitmap> byGenre = new HashMap<>();
+    private final Map<String, Integer> genreWordNumbers = new HashMap<>();
+    private final List<RoaringBitmap> byGenreWord = new ArrayList<>();
+    private final RoaringBitmap all = new RoaringBitmap();
+
+    /**
+     * Builds the bitmaps for songs.
+     * @param songs are the songs to index, in their natural order
+     */
+    public BitmapIndex(Collection<? extends SongInterface> songs) {
+        this.songs = songs.toArray(new SongInterface[0]);
+        Map<String, int[]> genreWords = new HashMap<>();
+        for (int row = 0; row < this.songs.length; row++) {
+            SongInterface song = this.songs[row];
+            byBPM.computeIfAbsent(song.getBPM(), key -> new RoaringBitmap()).add(row);
+            byYear.computeIfAbsent(song.getYear(), key -> new RoaringBitmap()).add(row);
+            byGenre.computeIfAbsent(song.getGenres(), key -> new RoaringBitmap()).add(row);
+            for (int word : genreWords.computeIfAbsent(song.getGenres(), this::encodeGenreWords)) {
+                byGenreWord.get(word).add(row);
+            }
+            all.add(row);
+        }
+    }
+
+    /**
+     * @return the numbers of the distinct words of genres, numbering words
+     *     that were not seen before
+     */
+    private int[] encodeGenreWords(String genres) {
+        return Arrays.stream(splitGenres(genres)).distinct().mapToInt(word ->
+                genreWordNumbers.computeIfAbsent(word, key -> {
+                    byGenreWord.add(new RoaringBitmap());
+                    return byGenreWord.size() - 1;
+                })).toArray();
+    }
+
+    /**
+     * @return the lower case words of genres, as genreWords() matches them
+     */
+    static String[] splitGenres(String genres) {
+        String trimmed = genres.trim().toLowerCase(Locale.ROOT);
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("\\s+");
+    }
+
+    /**
+     * @return the number of indexed songs
+     */
+    public int size() {
+        return songs.length;
+    }
+
+    /**
+     * @return the rows of every song
+     */
+    public RoaringBitmap all() {
+        return all;
+    }
+
+    /**
+     * @return the rows of the songs with a BPM between low and high
+     */
+    public RoaringBitmap bpmBetween(int low, int high) {
+        return low > high ? new RoaringBitmap() : RoaringBitmap.union(byBPM.subMap(low, true, high, true).values());
+    }
+
+    /**
+     * @return the rows of the songs on Billboard during or before maxYear
+     */
+    public RoaringBitmap yearAtMost(int maxYear) {
+        return RoaringBitmap.union(byYear.headMap(maxYear, true).values());
+    }
+
+    /**
+     * @return the rows of the songs whose genres are exactly genre
+     */
+    public RoaringBitmap genre(String genre) {
+        RoaringBitmap rows = byGenre.get(genre);
+        return rows == null ? new RoaringBitmap() : rows;
+    }
+
+    /**
+     * @param genres are one or more genre words, like "hip hop", in any case
+     * @return the rows of the songs whose genres contain every word of genres,
+     *     or of every song when genres has no words
+     */
+    public RoaringBitmap genreWords(String genres) {
+        RoaringBitmap rows = all;
+        for (String word : splitGenres(genres)) {
+            Integer number = genreWordNumbers.get(word);
+            if (number == null) {
+                return new RoaringBitmap();
+            }
+            rows = rows.and(byGenreWord.get(number));
+        }
+        return rows;
+    }
+
+    /**
+     * @return the number of distinct genre words
+     */
+    public int genreWordCount() {
+        return byGenreWord.size();
+    }
+
+    /**
+     * @return the song at row
+     */
+    public SongInterface song(int row) {
+        return songs[row];
+    }
+
+    /**
+     * @param rows are the rows of the songs to return
+     * @return the songs of rows, in row order
+     */
+    public List<SongInterface> songs(RoaringBitmap rows) {
+        List<SongInterface> result = new ArrayList<>(rows.cardinality());
+        PrimitiveIterator.OfInt iterator = rows.iterator();
+        while (iterator.hasNext()) {
+            result.add(songs[iterator.nextInt()]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,398 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sorted collection that groups values with an equal key into buckets, and
+ * keeps one IterableRedBlackTree node per bucket instead of one per value.
+ * When many values share a key, like songs that share a BPM, the height of the
+ * tree depends on the number of distinct keys and not on the number of values.
+ *
+ * Each bucket holds its values in a compact array in their natural order, so
+ * iterators still return every value in order. The key comparator has to agree
+ * with the natural order: a value with a smaller key than another must also be
+ * smaller by compareTo(). Song.compareTo() orders by BPM first, so
+ * Comparator.comparingInt(SongInterface::getBPM) is a valid key for songs.
+ */
+public class BucketedRedBlackTree<T extends Comparable<T>> implements IterableSortedCollection<T> {
+
+    /**
+     * The values that share one key, sorted by their natural order.
+     */
+    protected static class Bucket<T extends Comparable<T>> implements Comparable<Bucket<T>> {
+        private final Comparator<? super T> keyComparator;
+        private Object[] values = new Object[4];
+        private int count = 0;
+
+        public Bucket(Comparator<? super T> keyComparator) {
+            this.keyComparator = keyComparator;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            return (T) values[index];
+        }
+
+        public T first() {
+            return get(0);
+        }
+
+        public T last() {
+            return get(count - 1);
+        }
+
+        /**
+         * Inserts value after the values of this bucket that are equal to it.
+         */
+        public void insert(T value) {
+            int index = count;
+            while (index > 0 && get(index - 1).compareTo(value) > 0) {
+                index--;
+            }
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            System.arraycopy(values, index, values, index + 1, count - index);
+            values[index] = value;
+            count++;
+        }
+
+        public void removeAt(int index) {
+            System.arraycopy(values, index + 1, values, index, count - index - 1);
+            values[--count] = null;
+        }
+
+        /**
+         * Counts the leading values that are before bound: those that bound is
+         * larger than, and also those equal to bound when includeEqual is true.
+         */
+        public int countBefore(Comparable<T> bound, boolean includeEqual) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                int compare = bound.compareTo(get(middle));
+                if (compare > 0 || (compare == 0 && includeEqual)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        @Override
+        public int compareTo(Bucket<T> other) {
+            return keyComparator.compare(first(), other.first());
+        }
+    }
+
+    // set only by groupedBy(), before any value is inserted
+    private Comparator<? super T> keyComparator = Comparator.naturalOrder();
+    private final IterableRedBlackTree<Bucket<T>> buckets = new IterableRedBlackTree<>();
+    private int size = 0;
+    private int modificationCount = 0;
+
+    private Comparable<T> iterationStartPoint = null;
+
+    /**
+     * Creates an empty collection that only groups values that are equal by
+     * their natural order.
+     */
+    public BucketedRedBlackTree() {
+    }
+
+    /**
+     * Creates an empty collection that groups values by a key.
+     * @param keyComparator compares the keys that values are grouped by, and
+     *     has to agree with the natural order of the values
+     * @return the new collection
+     */
+    public static <T extends Comparable<T>> BucketedRedBlackTree<T> groupedBy(Comparator<? super T> keyComparator) {
+        BucketedRedBlackTree<T> tree = new BucketedRedBlackTree<>();
+        tree.keyComparator = keyComparator;
+        return tree;
+    }
+
+    /**
+     * Inserts a value into the bucket of its key, creating the bucket (and a
+     * tree node for it) when it is the first value with that key.
+     * @param value to be added into this collection
+     * @return true, as every value is inserted
+     * @throws NullPointerException when the provided value is null
+     */
+    public boolean insert(T value) throws NullPointerException {
+        if (value == null)
+            throw new NullPointerException("Cannot insert data value null into the tree.");
+        Bucket<T> bucket = findBucket(value);
+        if (bucket == null) {
+            bucket = new Bucket<T>(keyComparator);
+            bucket.insert(value);
+            buckets.insert(bucket);
+        } else {
+            bucket.insert(value);
+        }
+        size++;
+        modificationCount++;
+        return true;
+    }
+
+    /**
+     * Inserts every value of data by sorting them, appending each run of equal
+     * keys to its bucket, and bulk inserting the buckets for new keys.
+     * @param data are the values to insert
+     * @throws NullPointerException when data or any of its values is null
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void insertAll(Collection<? extends T> data) throws NullPointerException {
+        Object[] batch = data.toArray();
+        for (Object value : batch) {
+            if (value == null)
+                throw new NullPointerException("Cannot insert data value null into the tree.");
+        }
+        Arrays.sort(batch);
+
+        List<Bucket<T>> newBuckets = new ArrayList<>();
+        Bucket<T> bucket = null;
+        for (Object value : batch) {
+            T next = (T) value;
+            if (bucket == null || keyComparator.compare(bucket.first(), next) != 0) {
+                bucket = findBucket(next);
+                if (bucket == null) {
+                    bucket = new Bucket<T>(keyComparator);
+                    newBuckets.add(bucket);
+                }
+            }
+            bucket.insert(next);
+        }
+        buckets.insertAll(newBuckets);
+        size += batch.length;
+        modificationCount++;
+    }
+
+    /**
+     * Finds the bucket for the key of value.
+     * @return the bucket, or null when no value with that key is stored
+     */
+    private Bucket<T> findBucket(T value) {
+        Comparable<Bucket<T>> key = bucket -> keyComparator.compare(value, bucket.first());
+        Iterator<Bucket<T>> iterator = buckets.rangeIterator(key, true, key, true);
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    /**
+     * Removes one value that is equal to key from its bucket, and removes the
+     * bucket from the tree when that was its last value.
+     * @param key a comparable for the value to remove
+     * @return true if a value was removed, false if no such value was in the tree
+     * @throws NullPointerException when the provided key is null
+     */
+    public boolean remove(Comparable<T> key) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("This tree cannot store null references.");
+        Iterator<Bucket<T>> iterator = buckets.rangeIterator(bucketsFrom(key, true), true, null, true);
+        while (iterator.hasNext()) {
+            Bucket<T> bucket = iterator.next();
+            int index = bucket.countBefore(key, false);
+            if (index < bucket.count) {
+                if (key.compareTo(bucket.get(index)) != 0) {
+                    return false; // later buckets only hold larger values
+                }
+                if (bucket.count == 1) {
+                    buckets.remove(bucket);
+                } else {
+                    bucket.removeAt(index);
+                }
+                size--;
+                modificationCount++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean contains(Comparable<T> key) {
+        if (key == null) {
+            throw new NullPointerException("This tree cannot store null references.");
+        }
+        Iterator<T> iterator = rangeIterator(key, true, key, true);
+        return iterator.hasNext();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int modificationCount() {
+        return modificationCount;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        buckets.clear();
+        size = 0;
+        modificationCount++;
+    }
+
+    /**
+     * @return the number of distinct keys, which is the number of tree nodes
+     */
+    public int bucketCount() {
+        return buckets.size();
+    }
+
+    /**
+     * @return the height of the tree of buckets
+     */
+    public int height() {
+        return buckets.height();
+    }
+
+    public void setIterationStartPoint(Comparable<T> startPoint) {
+        iterationStartPoint = startPoint;
+    }
+
+    public Iterator<T> iterator() {
+        return rangeIterator(iterationStartPoint, true, null, true);
+    }
+
+    /**
+     * Returns an iterator over the values between lowerBound and upperBound.
+     * The first bucket with values in the range is found through the tree,
+     * the first value within it by binary search, and then the values of each
+     * bucket are read in turn.
+     * @param lowerBound is the lower end of the range, null for no lower end
+     * @param lowerInclusive is true when values equal to lowerBound are included
+     * @param upperBound is the upper end of the range, null for no upper end
+     * @param upperInclusive is true when values equal to upperBound are included
+     * @return an iterator over the values in the range
+     */
+    public Iterator<T> rangeIterator(Comparable<T> lowerBound, boolean lowerInclusive,
+                                     Comparable<T> upperBound, boolean upperInclusive) {
+        Iterator<Bucket<T>> bucketIterator = buckets.rangeIterator(
+                lowerBound == null ? null : bucketsFrom(lowerBound, lowerInclusive), true, null, true);
+        return new Iterator<T>() {
+            private Bucket<T> bucket = null;
+            private int index = 0;
+            {
+                if (bucketIterator.hasNext()) {
+                    bucket = bucketIterator.next();
+                    index = lowerBound == null ? 0 : bucket.countBefore(lowerBound, !lowerInclusive);
+                }
+                checkUpperBound();
+            }
+
+            private void checkUpperBound() {
+                if (bucket == null || upperBound == null) {
+                    return;
+                }
+                int compare = upperBound.compareTo(bucket.get(index));
+                if (compare < 0 || (compare == 0 && !upperInclusive)) {
+                    bucket = null;
+                }
+            }
+
+            public boolean hasNext() {
+                return bucket != null;
+            }
+
+            public T next() {
+                if (bucket == null) {
+                    throw new NoSuchElementException();
+                }
+                T value = bucket.get(index++);
+                if (index == bucket.count) {
+                    bucket = bucketIterator.hasNext() ? bucketIterator.next() : null;
+                    index = 0;
+                }
+                checkUpperBound();
+                return value;
+            }
+        };
+    }
+
+    /**
+     * @return a lower bound for the bucket tree that is below every bucket
+     *     whose last value is not below the lower bound of the range
+     */
+    private Comparable<Bucket<T>> bucketsFrom(Comparable<T> lowerBound, boolean lowerInclusive) {
+        return bucket -> {
+            int compare = lowerBound.compareTo(bucket.last());
+            return compare > 0 || (compare == 0 && !lowerInclusive) ? 1 : -1;
+        };
+    }
+
+    /**
+     * Tests if values with many duplicate keys are all returned in order, with one
+     * tree node per key
+     */
+    @Test
+    public void testBucketsKeepEveryValue() {
+        // Values are grouped by their hundreds
+        BucketedRedBlackTree<Integer> tree = BucketedRedBlackTree.groupedBy(Comparator.comparingInt(value -> value / 100));
+        IterableRedBlackTree<Integer> expected = new IterableRedBlackTree<>();
+        Random random = new Random(400);
+        for (int i = 0; i < 5000; i++) {
+            int value = random.nextInt(2000);
+            if (random.nextInt(4) == 0) {
+                assertEquals(expected.remove(value), tree.remove(value), "remove(" + value + ")");
+            } else {
+                tree.insert(value);
+                expected.insert(value);
+            }
+        }
+        assertEquals(expected.size(), tree.size());
+        assertIterableEquals(expected, tree);
+        assertEquals(20, tree.bucketCount());
+
+        List<Integer> range = new ArrayList<>();
+        List<Integer> expectedRange = new ArrayList<>();
+        tree.rangeIterator(150, false, 420, true).forEachRemaining(range::add);
+        expected.rangeIterator(150, false, 420, true).forEachRemaining(expectedRange::add);
+        assertEquals(expectedRange, range);
+
+        tree.setIterationStartPoint(1990);
+        int previous = 1990;
+        for (int value : tree) {
+            assertTrue(value >= previous, "Start point or order not correct");
+            previous = value;
+        }
+    }
+
+    /**
+     * Tests if songs bucketed by BPM answer getRange like the song tree does, with a
+     * tree that is only as tall as the number of distinct BPMs requires
+     */
+    @Test
+    public void testSongsByBPM() throws IOException {
+        BucketedRedBlackTree<SongInterface> tree = BucketedRedBlackTree.groupedBy(
+                Comparator.comparingInt(SongInterface::getBPM));
+        IterableRedBlackTree<SongInterface> expected = new IterableRedBlackTree<>();
+        new Backend(tree).readData("songs.csv");
+        new Backend(expected).readData("songs.csv");
+
+        assertEquals(600, tree.size());
+        assertTrue(tree.bucketCount() < 200, "Songs should share buckets");
+        assertTrue(tree.height() < expected.height());
+        List<String> expectedTitles = new ArrayList<>();
+        List<String> titles = new ArrayList<>();
+        expected.forEach(song -> expectedTitles.add(song.getTitle()));
+        tree.forEach(song -> titles.add(song.getTitle()));
+        assertEquals(expectedTitles, titles);
+        assertEquals(new Backend(expected).getRange(100, 120), new Backend(tree).getRange(100, 120));
+    }
+}
@@ -0,0 +1,291 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Thread-safe IterableSortedCollection backed by a lock-free skip list
+ * (ConcurrentSkipListSet). Any number of threads can insert, remove and
+ * query at the same time without a global lock.
+ *
+ * Values equal to values in the collection are allowed: each value is stored
+ * with a sequence number that is unique within the collection, so equal
+ * values are kept in the order they were inserted. Range bounds are turned
+ * into probes that sort just before or just after the values equal to them.
+ *
+ * Iterators are weakly consistent, like those of the java.util.concurrent
+ * collections: they never throw ConcurrentModificationException, return every
+ * value that is in the range for the whole iteration, and may or may not
+ * return values that are inserted or removed while they run. size() is
+ * updated right after each change, so it may briefly lag behind.
+ */
+public class ConcurrentSortedCollection<T extends Comparable<T>> implements IterableSortedCollection<T> {
+
+    /**
+     * A value together with the sequence number that makes it unique.
+     */
+    protected static class Entry<T extends Comparable<T>> {
+        public final T value;
+        public final long sequence;
+
+        public Entry(T value, long sequence) {
+            this.value = value;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * A position between entries: just before (or just after) every entry
+     * whose value is equal to bound. A probe is never equal to an entry.
+     */
+    protected static class Probe<T extends Comparable<T>> extends Entry<T> {
+        private final Comparable<T> bound;
+        private final boolean afterEqual;
+
+        public Probe(Comparable<T> bound, boolean afterEqual) {
+            super(null, 0);
+            this.bound = bound;
+            this.afterEqual = afterEqual;
+        }
+
+        public int compareTo(Entry<T> entry) {
+            int compare = bound.compareTo(entry.value);
+            if (compare != 0) {
+                return compare;
+            }
+            return afterEqual ? 1 : -1;
+        }
+    }
+
+    private final ConcurrentSkipListSet<Entry<T>> entries =
+            new ConcurrentSkipListSet<>(ConcurrentSortedCollection::compareEntries);
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger modificationCount = new AtomicInteger();
+
+    private volatile Comparable<T> iterationStartPoint = null;
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Comparable<T>> int compareEntries(Entry<T> a, Entry<T> b) {
+        if (a instanceof Probe) {
+            return ((Probe<T>) a).compareTo(b);
+        }
+        if (b instanceof Probe) {
+            return -((Probe<T>) b).compareTo(a);
+        }
+        int compare = a.value.compareTo(b.value);
+        return compare != 0 ? compare : Long.compare(a.sequence, b.sequence);
+    }
+
+    /**
+     * Inserts a new value after any values in the collection that are equal to it.
+     * @param value to be added into this collection
+     * @return true, as every value is inserted
+     * @throws NullPointerException when the provided value is null
+     */
+    public boolean insert(T value) throws NullPointerException {
+        if (value == null)
+            throw new NullPointerException("Cannot insert data value null into the collection.");
+        entries.add(new Entry<>(value, nextSequence.getAndIncrement()));
+        size.incrementAndGet();
+        modificationCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Removes the earliest inserted value that is equal to key. When another
+     * thread removes that value first, the next equal value is tried.
+     * @param key a comparable for the value to remove
+     * @return true if a value was removed, false if no such value was found
+     * @throws NullPointerException when the provided key is null
+     */
+    public boolean remove(Comparable<T> key) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("This collection cannot store null references.");
+        Probe<T> probe = new Probe<>(key, false);
+        while (true) {
+            Entry<T> first = entries.ceiling(probe);
+            if (first == null || key.compareTo(first.value) != 0) {
+                return false;
+            }
+            if (entries.remove(first)) {
+                size.decrementAndGet();
+                modificationCount.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    public boolean contains(Comparable<T> key) {
+        if (key == null) {
+            throw new NullPointerException("This collection cannot store null references.");
+        }
+        Entry<T> first = entries.ceiling(new Probe<>(key, false));
+        return first != null && key.compareTo(first.value) == 0;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public int modificationCount() {
+        return modificationCount.get();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Removes every value. Values inserted by other threads while this runs
+     * may or may not be removed.
+     */
+    public void clear() {
+        Iterator<Entry<T>> iterator = entries.iterator();
+        while (iterator.hasNext()) {
+            if (entries.remove(iterator.next())) {
+                size.decrementAndGet();
+                modificationCount.incrementAndGet();
+            }
+        }
+    }
+
+    public void setIterationStartPoint(Comparable<T> startPoint) {
+        iterationStartPoint = startPoint;
+    }
+
+    public Iterator<T> iterator() {
+        return rangeIterator(iterationStartPoint, true, null, true);
+    }
+
+    /**
+     * Returns a weakly consistent iterator over the values between lowerBound
+     * and upperBound.
+     * @param lowerBound is the lower end of the range, null for no lower end
+     * @param lowerInclusive is true when values equal to lowerBound are included
+     * @param upperBound is the upper end of the range, null for no upper end
+     * @param upperInclusive is true when values equal to upperBound are included
+     * @return an iterator over the values in the range
+     */
+    public Iterator<T> rangeIterator(Comparable<T> lowerBound, boolean lowerInclusive,
+                                     Comparable<T> upperBound, boolean upperInclusive) {
+        Iterator<Entry<T>> iterator = lowerBound == null ? entries.iterator()
+                : entries.tailSet(new Probe<>(lowerBound, !lowerInclusive)).iterator();
+        Probe<T> upperProbe = upperBound == null ? null : new Probe<>(upperBound, upperInclusive);
+        return new Iterator<T>() {
+            private Entry<T> next = advance();
+
+            private Entry<T> advance() {
+                if (!iterator.hasNext()) {
+                    return null;
+                }
+                Entry<T> entry = iterator.next();
+                return upperProbe != null && upperProbe.compareTo(entry) < 0 ? null : entry;
+            }
+
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            public T next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                T value = next.value;
+                next = advance();
+                return value;
+            }
+        };
+    }
+
+    /**
+     * Tests if equal values, ranges and removes behave like IterableRedBlackTree
+     */
+    @Test
+    public void testRangesAndDuplicates() {
+        ConcurrentSortedCollection<Integer> collection = new ConcurrentSortedCollection<>();
+        for (int i = 0; i < 100; i++) {
+            collection.insert(i % 10);
+        }
+        assertEquals(100, collection.size());
+        List<Integer> range = new ArrayList<>();
+        collection.rangeIterator(3, false, 5, true).forEachRemaining(range::add);
+        assertEquals(20, range.size());
+        assertEquals(4, (int) range.get(0));
+        assertEquals(5, (int) range.get(19));
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(collection.remove(7));
+        }
+        assertFalse(collection.remove(7));
+        assertFalse(collection.contains(7));
+        assertEquals(90, collection.size());
+        collection.setIterationStartPoint(9);
+        int count = 0;
+        for (int value : collection) {
+            assertEquals(9, value);
+            count++;
+        }
+        assertEquals(10, count);
+    }
+
+    /**
+     * Tests if many threads inserting, removing and scanning at the same time leave
+     * exactly the expected values, and if every scan sees values in order
+     */
+    @Test
+    public void testConcurrentStress() throws Exception {
+        ConcurrentSortedCollection<Integer> collection = new ConcurrentSortedCollection<>();
+        int writers = 4;
+        int perWriter = 20000;
+        ExecutorService pool = Executors.newFixedThreadPool(writers + 2);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            int offset = w;
+            tasks.add(pool.submit(() -> {
+                // Each writer inserts its own values, and removes every third again
+                for (int i = 0; i < perWriter; i++) {
+                    int value = i * writers + offset;
+                    collection.insert(value);
+                    if (i % 3 == 0) {
+                        assertTrue(collection.remove(value));
+                    }
+                }
+            }));
+        }
+        for (int r = 0; r < 2; r++) {
+            tasks.add(pool.submit(() -> {
+                for (int scan = 0; scan < 50; scan++) {
+                    int previous = -1;
+                    for (int value : collection) {
+                        assertTrue(previous < value, "Scan out of order");
+                        previous = value;
+                    }
+                }
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get(); // rethrows assertion failures of the task
+        }
+        pool.shutdown();
+
+        int expected = writers * (perWriter - (perWriter + 2) / 3);
+        assertEquals(expected, collection.size());
+        int count = 0;
+        for (int value : collection) {
+            assertTrue((value / writers) % 3 != 0, "Removed value " + value + " found");
+            count++;
+        }
+        assertEquals(expected, count);
+    }
+}
@@ -6,6 +6,10 @@ import java.util.Scanner;
 import java.util.List;
 
 public class Frontend implements FrontendInterface{
+    // The most titles shown for a search, as many as the search index keeps
+    // per prefix so that one-word searches never leave its fast path
+    private static final int SEARCH_LIMIT = SongSearchIndex.SUGGESTIONS;
+
     private String min = "min";
     private String max = "max";
     private String year = "none";
@@ -39,6 +43,9 @@ public class Frontend implements FrontendInterface{
         } else if ("D".equals(line)) {
             topFive();
             runCommandLoop();
+        } else if ("S".equals(line)) {
+            search();
+            runCommandLoop();
         } else if ("Q".equals(line)) {
             return;
         } else {
@@ -62,6 +69,7 @@ public class Frontend implements FrontendInterface{
 	        [G]et Songs by Speed BPM [min - max]
 	        [F]ilter Old Songs (by Max Year: none)
 	        [D]isplay Five Most Danceable
+	        [S]earch Titles and Artists
 	        [Q]uit
 	    Choose command:""";
 	menu=menu.replace("min",min).replace("max",max).replace("none",year);
@@ -164,4 +172,24 @@ public class Frontend implements FrontendInterface{
 		System.out.println("Please firstly call [G]et songs by Speed BPM.");
 	}
     }
+
+    /**
+     * Provides text-based user interface and error handling for the 
+     * [S]earch Titles and Artists command.
+     */
+    public void search() {
+	System.out.print("Enter words of a title or artist: ");
+
+	String query = in.nextLine();
+	List<String> songs = backend.searchSongs(query, SEARCH_LIMIT);
+	if (songs.size() == 0) {
+	    System.out.println("No song matches that.");
+	    return;
+	}
+	//Otherwise, it should print the names of the first matching songs.
+	System.out.println("Songs matching \"" + query.trim() + "\":");
+	for (String song : songs) {
+	    System.out.println("\t" + song);
+	}
+    }
 }
@@ -137,4 +137,31 @@ public class FrontendDeveloperTests {
         System.setOut(System.out);
         System.setIn(System.in);
     }
+    /**
+     * Test the search method.
+     * A query that matches a title should list that title, and a query that matches
+     * nothing should print No song matches that.
+     */
+    @Test
+    public void testSearch() {
+        String simulatedUserInput = "S\nsoul\nS\nxyz\nQ\n"; 
+        //Searching one word that matches and one that does not
+        ByteArrayInputStream bais = new ByteArrayInputStream(simulatedUserInput.getBytes());
+        System.setIn(bais);
+        //Set this as the user input
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out));
+        //Store the output
+        Scanner in = new Scanner(System.in);
+        IterableSortedCollection<SongInterface> tree = new ISCPlaceholder<>();
+        BackendInterface backend = new BackendPlaceholder(tree);
+        FrontendInterface frontend = new Frontend(in, backend);
+        //Create a frontend object to test
+        frontend.runCommandLoop();
+        assertTrue(out.toString().contains("Songs matching \"soul\":\n\tHey, Soul Sister"), "A matching title should be listed.");
+        assertTrue(out.toString().contains("No song matches that."), "When nothing matches, it should print 'No song matches that.'");
+        //Compare the output with the expected output, if they are the same, the test passes
+        System.setOut(System.out);
+        System.setIn(System.in);
+    }
 }
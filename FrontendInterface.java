@@ -41,4 +41,10 @@ public interface FrontendInterface {
      */
     public void topFive();
 
+    /**
+     * Provides text-based user interface and error handling for the 
+     * [S]earch Titles and Artists command.
+     */
+    public void search();
+
 }
@@ -36,6 +36,10 @@ public class FrontendPlaceholder implements FrontendInterface {
 	System.out.println("D"); // user entered command
 	topFive();
 
+	displayMainMenu();
+	System.out.println("S"); // user entered command
+	search();
+
     	displayMainMenu();
 	System.out.println("Q"); // user entered command
     }
@@ -52,6 +56,7 @@ public class FrontendPlaceholder implements FrontendInterface {
 	        [G]et Songs by Speed BPM [min - max]
 	        [F]ilter Old Songs (by Max Year: none)
 	        [D]isplay Five Most Danceable
+	        [S]earch Titles and Artists
 	        [Q]uit
 	    Choose command:""";
 	menu=menu.replace("min",min).replace("max",max).replace("none",year);
@@ -116,4 +121,17 @@ public class FrontendPlaceholder implements FrontendInterface {
 			       -4: Only Girl (In The World)""");
     }
 
+    /**
+     * Provides text-based user interface and error handling for the 
+     * [S]earch Titles and Artists command.
+     */
+    public void search() {
+	System.out.print("Enter words of a title or artist: ");
+	System.out.println("baby"); // user entered command
+
+	System.out.println("""
+			   Songs matching "baby":
+			       Baby""");
+    }
+
 }
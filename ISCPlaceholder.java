@@ -7,11 +7,14 @@ public class ISCPlaceholder<T extends Comparable<T>>
     private T value;
 
     private ArrayList<SongInterface> songs = new ArrayList<>();
+
+    private int modificationCount = 0;
     
     public boolean insert(T data)
 	throws NullPointerException, IllegalArgumentException {
 	value = data;
     songs.add((SongInterface) value);
+	modificationCount++;
 	return true;
     }
 
@@ -19,6 +22,18 @@ public class ISCPlaceholder<T extends Comparable<T>>
 	return true;
     }
 
+    @SuppressWarnings("unchecked")
+    public boolean remove(Comparable<T> data) {
+	for (int i = 0; i < songs.size(); i++) {
+	    if (data.compareTo((T) songs.get(i)) == 0) {
+		songs.remove(i);
+		modificationCount++;
+		return true;
+	    }
+	}
+	return false;
+    }
+
     public boolean isEmpty() {
 	return false;
     }
@@ -27,6 +42,10 @@ public class ISCPlaceholder<T extends Comparable<T>>
 	return songs.size();
     }
 
+    public int modificationCount() {
+	return modificationCount;
+    }
+
     public void clear() {
     }
 
@@ -36,4 +55,19 @@ public class ISCPlaceholder<T extends Comparable<T>>
     public Iterator<T> iterator() {
         return (Iterator<T>) songs.iterator();
     }
+
+    @SuppressWarnings("unchecked")
+    public Iterator<T> rangeIterator(Comparable<T> lowerBound, boolean lowerInclusive,
+                                     Comparable<T> upperBound, boolean upperInclusive) {
+        ArrayList<T> inRange = new ArrayList<>();
+        for (SongInterface song : songs) {
+            T value = (T) song;
+            int lower = lowerBound == null ? -1 : lowerBound.compareTo(value);
+            int upper = upperBound == null ? 1 : upperBound.compareTo(value);
+            if ((lower < 0 || (lower == 0 && lowerInclusive)) && (upper > 0 || (upper == 0 && upperInclusive))) {
+                inRange.add(value);
+            }
+        }
+        return inRange.iterator();
+    }
 }
@@ -1,6 +1,8 @@
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.Stack;
 import java.util.NoSuchElementException;
@@ -30,16 +32,114 @@ public class IterableRedBlackTree<T extends Comparable<T>>
         }
     }
 
+    // Changed by every insert, remove and clear, see modificationCount()
+    private int modificationCount = 0;
+
+    @Override
+    public boolean insert(T data) throws NullPointerException {
+        boolean inserted = super.insert(data);
+        modificationCount++;
+        return inserted;
+    }
+
+    @Override
+    public boolean remove(Comparable<T> data) throws NullPointerException {
+        if (!super.remove(data)) {
+            return false;
+        }
+        modificationCount++;
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        modificationCount++;
+    }
+
+    public int modificationCount() {
+        return modificationCount;
+    }
+
+    // If iterators walk the up and down references instead of keeping a stack
+    private boolean stacklessIteration = false;
+
+    /**
+     * Selects how iterators of this tree step from one value to the next. The
+     * default iterator keeps a stack of the nodes left to visit. A stackless
+     * iterator finds each successor by following the up and down references of
+     * the nodes, so it only needs O(1) extra memory and never locks.
+     * @param stackless is true for stackless iterators, false for the default
+     */
+    public void setStacklessIteration(boolean stackless) {
+        this.stacklessIteration = stackless;
+    }
+
     public Iterator<T> iterator() {
-        return new RBTIterator<>(root, iterationStartPoint);
+        return rangeIterator(iterationStartPoint, true, null, true);
+    }
+
+    /**
+     * Returns an iterator over the values between lowerBound and upperBound.
+     * Subtrees that lie entirely outside of the range are never visited, and
+     * the iteration ends at the last value within the upper bound.
+     * @param lowerBound is the lower end of the range, null for no lower end
+     * @param lowerInclusive is true when values equal to lowerBound are included
+     * @param upperBound is the upper end of the range, null for no upper end
+     * @param upperInclusive is true when values equal to upperBound are included
+     * @return an iterator over the values in the range
+     */
+    public Iterator<T> rangeIterator(Comparable<T> lowerBound, boolean lowerInclusive,
+                                     Comparable<T> upperBound, boolean upperInclusive) {
+        if (stacklessIteration) {
+            return new RBTStacklessIterator<>(root, lowerBound, lowerInclusive, upperBound, upperInclusive);
+        }
+        return new RBTIterator<>(root, lowerBound, lowerInclusive, upperBound, upperInclusive);
+    }
+
+    /**
+     * Holds the bounds of the range that an iterator steps through.
+     */
+    private static abstract class RBTRangeIterator<R extends Comparable<R>> implements Iterator<R> {
+        private Comparable<R> lowerBound;
+        private boolean lowerInclusive;
+        private Comparable<R> upperBound;
+        private boolean upperInclusive;
+
+        protected RBTRangeIterator(Comparable<R> lowerBound, boolean lowerInclusive,
+                                   Comparable<R> upperBound, boolean upperInclusive) {
+            this.lowerBound = lowerBound;
+            this.lowerInclusive = lowerInclusive;
+            this.upperBound = upperBound;
+            this.upperInclusive = upperInclusive;
+        }
+
+        protected boolean isBelowRange(R value) {
+            if (lowerBound == null) {
+                return false;
+            }
+            int compare = lowerBound.compareTo(value);
+            return compare > 0 || (compare == 0 && !lowerInclusive);
+        }
+
+        protected boolean isAboveRange(R value) {
+            if (upperBound == null) {
+                return false;
+            }
+            int compare = upperBound.compareTo(value);
+            return compare < 0 || (compare == 0 && !upperInclusive);
+        }
     }
 
-    private static class RBTIterator<R extends Comparable<R>> implements Iterator<R> {
+    /**
+     * Steps through a range with a stack of the nodes that are left to visit.
+     */
+    private static class RBTIterator<R extends Comparable<R>> extends RBTRangeIterator<R> {
         private Stack<Node<R>> stack = new Stack<>();
-        private Comparable<R> startPoint;
 
-        public RBTIterator(Node<R> root, Comparable<R> startPoint) {
-            this.startPoint = startPoint;
+        public RBTIterator(Node<R> root, Comparable<R> lowerBound, boolean lowerInclusive,
+                           Comparable<R> upperBound, boolean upperInclusive) {
+            super(lowerBound, lowerInclusive, upperBound, upperInclusive);
             buildStackHelper(root);
         }
 
@@ -49,13 +149,16 @@ public class IterableRedBlackTree<T extends Comparable<T>>
                 return;
             }
 
-            // Recursive case 1 : When data within node is smaller than start value
-            if (startPoint.compareTo(node.data) > 0) {
+            // Recursive case 1 : When data within node is smaller than the range
+            if (isBelowRange(node.data)) {
                 buildStackHelper(node.down[1]); // Recursively calls method on nodes right subtree
             }
-            // Recursive case 2: When data within node is greater than or equal to start value
+            // Recursive case 2: When data within node is not below the range
             else {
-                stack.push(node); // Pushes node to stack
+                // Nodes past the upper bound are skipped, along with their right subtrees
+                if (!isAboveRange(node.data)) {
+                    stack.push(node); // Pushes node to stack
+                }
                 buildStackHelper(node.down[0]); // Recursively calls method on nodes left subtree
             }
         }
@@ -79,6 +182,161 @@ public class IterableRedBlackTree<T extends Comparable<T>>
         }
     }
 
+    /**
+     * Steps through a range by following up and down references from one node
+     * to its in-order successor, without any stack or other allocation.
+     */
+    private static class RBTStacklessIterator<R extends Comparable<R>> extends RBTRangeIterator<R> {
+        private Node<R> nextNode;
+
+        public RBTStacklessIterator(Node<R> root, Comparable<R> lowerBound, boolean lowerInclusive,
+                                    Comparable<R> upperBound, boolean upperInclusive) {
+            super(lowerBound, lowerInclusive, upperBound, upperInclusive);
+            // Descends to the smallest node that is not below the range
+            Node<R> node = root;
+            while (node != null) {
+                if (isBelowRange(node.data)) {
+                    node = node.down[1];
+                } else {
+                    nextNode = node;
+                    node = node.down[0];
+                }
+            }
+            if (nextNode != null && isAboveRange(nextNode.data)) {
+                nextNode = null;
+            }
+        }
+
+        public boolean hasNext() {
+            return nextNode != null;
+        }
+
+        public R next() {
+            if (nextNode == null) {
+                throw new NoSuchElementException();
+            }
+            R data = nextNode.data;
+            nextNode = successor(nextNode);
+            if (nextNode != null && isAboveRange(nextNode.data)) {
+                nextNode = null;
+            }
+            return data;
+        }
+    }
+
+    /**
+     * Inserts every value of data by sorting the values once and then building
+     * a perfectly balanced tree from all values (old and new) in linear time,
+     * rather than inserting and rebalancing one value at a time. The resulting
+     * in-order sequence is the same as inserting the values one by one.
+     * @param data are the values to insert
+     * @throws NullPointerException when data or any of its values is null
+     */
+    @Override
+    public void insertAll(Collection<? extends T> data) throws NullPointerException {
+        Object[] batch = data.toArray();
+        for (Object value : batch) {
+            if (value == null)
+                throw new NullPointerException("Cannot insert data value null into the tree.");
+        }
+        Arrays.sort(batch);
+        // insert() places a new value before the values it is equal to, so runs
+        // of equal values end up in reverse order of insertion
+        reverseEqualRuns(batch);
+
+        // Merges the current values (in order) with the sorted batch
+        Object[] values = new Object[size + batch.length];
+        Node<T> current = leftmost(root);
+        int j = 0;
+        int k = 0;
+        while (current != null || j < batch.length) {
+            if (j < batch.length && (current == null || compare(batch[j], current.data) <= 0)) {
+                values[k++] = batch[j++];
+            } else {
+                values[k++] = current.data;
+                current = successor(current);
+            }
+        }
+
+        // Every node is black except those on the deepest level, which is the
+        // only level that can be incomplete, so all paths have the same black height
+        int redDepth = 31 - Integer.numberOfLeadingZeros(Math.max(values.length, 1));
+        this.root = buildBalanced(values, 0, values.length - 1, 0, redDepth);
+        this.size = values.length;
+        modificationCount++;
+    }
+
+    /**
+     * Builds a balanced subtree from the sorted values[from..to].
+     * @return the root of the subtree, or null when the range is empty
+     */
+    @SuppressWarnings("unchecked")
+    private RBTNode<T> buildBalanced(Object[] values, int from, int to, int depth, int redDepth) {
+        if (from > to) {
+            return null;
+        }
+        int middle = (from + to) >>> 1;
+        RBTNode<T> node = createNode((T) values[middle]);
+        node.isBlack = depth == 0 || depth != redDepth;
+        node.down[0] = buildBalanced(values, from, middle - 1, depth + 1, redDepth);
+        node.down[1] = buildBalanced(values, middle + 1, to, depth + 1, redDepth);
+        if (node.down[0] != null) node.down[0].up = node;
+        if (node.down[1] != null) node.down[1].up = node;
+        updateAugmentedFields(node);
+        return node;
+    }
+
+    /**
+     * Reverses every run of equal values within the sorted array, so that the
+     * values of a run are in the order repeated calls to insert() leave them.
+     * @param sorted is an array of values sorted by their natural order
+     */
+    @SuppressWarnings("unchecked")
+    protected static void reverseEqualRuns(Object[] sorted) {
+        int start = 0;
+        for (int end = 1; end <= sorted.length; end++) {
+            if (end == sorted.length || ((Comparable<Object>) sorted[end]).compareTo(sorted[start]) != 0) {
+                for (int a = start, b = end - 1; a < b; a++, b--) {
+                    Object swap = sorted[a];
+                    sorted[a] = sorted[b];
+                    sorted[b] = swap;
+                }
+                start = end;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object value, T other) {
+        return ((T) value).compareTo(other);
+    }
+
+    /**
+     * @return the node with the smallest value in the subtree of node, or null
+     */
+    protected static <R> Node<R> leftmost(Node<R> node) {
+        if (node == null) {
+            return null;
+        }
+        while (node.down[0] != null) {
+            node = node.down[0];
+        }
+        return node;
+    }
+
+    /**
+     * @return the node that follows node in order, or null when node is the last
+     */
+    protected static <R> Node<R> successor(Node<R> node) {
+        if (node.down[1] != null) {
+            return leftmost(node.down[1]);
+        }
+        while (node.isRightChild()) {
+            node = node.up;
+        }
+        return node.up;
+    }
+
     /**
      * Performs a naive insertion into a binary search tree: adding the new node
      * in a leaf position within the tree. After this insertion, no attempt is made
@@ -205,4 +463,150 @@ public class IterableRedBlackTree<T extends Comparable<T>>
         // Tests if iterator stops iterating at end of the tree
         assertFalse(iterator().hasNext());
     }
+
+    /**
+     * Tests if bulk inserting into a tree that already holds values keeps every value in
+     * order, and builds a balanced tree where every path has the same number of black nodes
+     */
+    @Test
+    public void testInsertAll() {
+        IterableRedBlackTree<Integer> tree = new IterableRedBlackTree<>();
+        tree.insert(10);
+        tree.insert(3);
+        tree.insertAll(Arrays.asList(7, 1, 12, 5, 3, 9, 2, 11, 4, 8, 6));
+
+        // Tests if every value (including the duplicate 3) is kept in order
+        assertEquals(13, tree.size());
+        assertEquals("[ 1, 2, 3, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 ]", tree.toInOrderString());
+
+        // Tests if the red-black properties (and subtree sizes) hold, and the tree is perfectly balanced
+        tree.validateRBTree();
+        assertEquals(2, tree.rank(3), "Two values are smaller than 3");
+        assertEquals(2, tree.countInRange(3, true, 3, true), "3 was inserted twice");
+        assertEquals(4, tree.height(), "Tree of 13 values should have height 4");
+
+        // Tests if normal inserts still work on the bulk built tree
+        tree.insert(0);
+        assertEquals(Integer.valueOf(0), tree.iterator().next());
+        tree.validateRBTree();
+    }
+
+    /**
+     * Tests if range iterators honor inclusive and exclusive bounds, can be used at the
+     * same time, and only compare against the nodes along the way to the range
+     */
+    @Test
+    public void testRangeIterator() {
+        IterableRedBlackTree<Integer> tree = new IterableRedBlackTree<>();
+        for (int i = 1; i <= 1000; i++) {
+            tree.insert(i);
+        }
+
+        // Two ranges scanned at the same time
+        Iterator<Integer> inclusive = tree.rangeIterator(10, true, 12, true);
+        Iterator<Integer> exclusive = tree.rangeIterator(10, false, 12, false);
+        assertEquals(Integer.valueOf(10), inclusive.next());
+        assertEquals(Integer.valueOf(11), exclusive.next());
+        assertEquals(Integer.valueOf(11), inclusive.next());
+        assertFalse(exclusive.hasNext(), "Exclusive range should only hold 11");
+        assertEquals(Integer.valueOf(12), inclusive.next());
+        assertFalse(inclusive.hasNext(), "Inclusive range should end at 12");
+
+        // Open ended ranges
+        assertEquals(Integer.valueOf(1), tree.rangeIterator(null, true, 5, true).next());
+        Iterator<Integer> tail = tree.rangeIterator(999, true, null, true);
+        assertEquals(Integer.valueOf(999), tail.next());
+        assertEquals(Integer.valueOf(1000), tail.next());
+        assertFalse(tail.hasNext());
+
+        // Counts the comparisons made while scanning a narrow range
+        int[] comparisons = new int[1];
+        Comparable<Integer> low = value -> { comparisons[0]++; return Integer.compare(500, value); };
+        Comparable<Integer> high = value -> { comparisons[0]++; return Integer.compare(504, value); };
+        Iterator<Integer> narrow = tree.rangeIterator(low, true, high, true);
+        int count = 0;
+        while (narrow.hasNext()) {
+            narrow.next();
+            count++;
+        }
+        assertEquals(5, count);
+        // Only nodes on the paths to the range and within the range should be visited
+        assertTrue(comparisons[0] < 4 * tree.height() + 20, "Visited too many nodes: " + comparisons[0]);
+    }
+
+    /**
+     * Tests if stackless iterators return the same values as the default iterators, for
+     * full iterations, start points, and bounded ranges
+     */
+    @Test
+    public void testStacklessIteration() {
+        IterableRedBlackTree<Integer> tree = new IterableRedBlackTree<>();
+        for (int i = 0; i < 200; i++) {
+            tree.insert((i * 37) % 101); // values 0 to 100, most of them twice
+        }
+
+        for (int low = -5; low < 110; low += 7) {
+            for (int high = low; high < 110; high += 11) {
+                // Collects the range through both kinds of iterators
+                tree.setStacklessIteration(false);
+                Iterator<Integer> expected = tree.rangeIterator(low, low % 2 == 0, high, high % 2 == 0);
+                tree.setStacklessIteration(true);
+                Iterator<Integer> actual = tree.rangeIterator(low, low % 2 == 0, high, high % 2 == 0);
+                while (expected.hasNext()) {
+                    assertTrue(actual.hasNext(), "Stackless iterator ended early");
+                    assertEquals(expected.next(), actual.next());
+                }
+                assertFalse(actual.hasNext(), "Stackless iterator did not end");
+            }
+        }
+
+        // Start point and full iteration
+        tree.setIterationStartPoint(50);
+        assertEquals(Integer.valueOf(50), tree.iterator().next());
+        tree.setIterationStartPoint(null);
+        int count = 0;
+        for (Integer value : tree) {
+            count++;
+        }
+        assertEquals(200, count);
+        assertThrows(NoSuchElementException.class, () -> tree.rangeIterator(101, true, null, true).next());
+    }
+
+    /**
+     * Tests if removing duplicates and other values keeps the tree valid, and keeps both
+     * kinds of iterators in order
+     */
+    @Test
+    public void testRemove() {
+        IterableRedBlackTree<Integer> tree = new IterableRedBlackTree<>();
+        for (int i = 0; i < 300; i++) {
+            tree.insert(i % 100); // every value three times
+        }
+        // Removes one copy of every even value, and all copies of multiples of 10
+        for (int i = 0; i < 100; i += 2) {
+            assertTrue(tree.remove(i));
+            if (i % 10 == 0) {
+                assertTrue(tree.remove(i));
+                assertTrue(tree.remove(i));
+                assertFalse(tree.remove(i), "No copies of " + i + " should be left");
+            }
+            tree.validateRBTree();
+        }
+        assertEquals(300 - 50 - 20, tree.size());
+        assertFalse(tree.contains(50));
+        assertTrue(tree.contains(52));
+
+        // Both iterators should still step through the values in order
+        for (boolean stackless : new boolean[] {false, true}) {
+            tree.setStacklessIteration(stackless);
+            int previous = -1;
+            int count = 0;
+            for (Integer value : tree) {
+                assertTrue(previous <= value, "Values out of order");
+                previous = value;
+                count++;
+            }
+            assertEquals(tree.size(), count);
+        }
+    }
 }
@@ -1,3 +1,6 @@
+import java.util.Collection;
+import java.util.Iterator;
+
 /**
  * This ADT supports iteration through a sorted collection.
  * 
@@ -5,10 +8,119 @@
  * iterator will be the smallest value in the collection that is smaller than 
  * or equal to the specified start point.  When no (or a null) start point is 
  * set, the iterator will step through all values in the collection.
+ *
+ * Iterators over a bounded range can also be requested from rangeIterator(),
+ * which does not depend on (or change) the start point, so any number of
+ * callers can scan different ranges at the same time.
  */
 public interface IterableSortedCollection <T extends Comparable<T>>
     extends SortedCollectionInterface<T>, Iterable<T> {
 
     public void setIterationStartPoint(Comparable<T> startPoint);
 
+    /**
+     * Returns an iterator over the values between lowerBound and upperBound in
+     * ascending order. A value v is within the lower bound when
+     * lowerBound.compareTo(v) is negative (or zero, when lowerInclusive), and
+     * within the upper bound when upperBound.compareTo(v) is positive (or zero,
+     * when upperInclusive). The iteration start point is ignored.
+     * @param lowerBound is the lower end of the range, null for no lower end
+     * @param lowerInclusive is true when values equal to lowerBound are included
+     * @param upperBound is the upper end of the range, null for no upper end
+     * @param upperInclusive is true when values equal to upperBound are included
+     * @return an iterator over the values in the range
+     */
+    public Iterator<T> rangeIterator(Comparable<T> lowerBound, boolean lowerInclusive,
+                                     Comparable<T> upperBound, boolean upperInclusive);
+
+    /**
+     * Returns a count of the changes made to this collection. Every insert,
+     * remove and clear that changes the values also changes this count, so
+     * code that keeps data derived from the values can compare it to notice
+     * any change, including a remove and an insert that keep the size.
+     * @return the number of changes made so far
+     */
+    public int modificationCount();
+
+    /**
+     * Inserts every value of data into this collection. Implementations may
+     * override this to build their structure in one pass instead of inserting
+     * the values one by one.
+     * @param data are the values to insert
+     * @throws NullPointerException when data or any of its values is null
+     */
+    public default void insertAll(Collection<? extends T> data) throws NullPointerException {
+        for (T value : data) {
+            insert(value);
+        }
+    }
+
+
+    /**
+     * Replaces one value equal to oldValue with newValue. The new value is
+     * placed at its own position, so it may be ordered differently.
+     * @param oldValue is a comparable for the value to replace
+     * @param newValue is the value that takes its place
+     * @return true if a value was replaced, false if no value equals oldValue
+     * @throws NullPointerException when either argument is null
+     */
+    public default boolean update(Comparable<T> oldValue, T newValue) throws NullPointerException {
+        if (newValue == null) {
+            throw new NullPointerException("Cannot insert data value null into the collection.");
+        }
+        if (!remove(oldValue)) {
+            return false;
+        }
+        insert(newValue);
+        return true;
+    }
+
+    /**
+     * Counts the values that are smaller than key.
+     * @param key is compared to the values of this collection
+     * @return the number of values v for which key.compareTo(v) is positive
+     */
+    public default int rank(Comparable<T> key) {
+        return countInRange(null, true, key, false);
+    }
+
+    /**
+     * Finds the value at a position of the sorted values of this collection.
+     * @param index is the position, 0 for the smallest value
+     * @return the value at index
+     * @throws IndexOutOfBoundsException when index is not within [0, size())
+     */
+    public default T select(int index) throws IndexOutOfBoundsException {
+        if (index >= 0) {
+            Iterator<T> iterator = rangeIterator(null, true, null, true);
+            for (int i = 0; iterator.hasNext(); i++) {
+                T value = iterator.next();
+                if (i == index) {
+                    return value;
+                }
+            }
+        }
+        throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size());
+    }
+
+    /**
+     * Counts the values between lowerBound and upperBound, with the same bounds
+     * as rangeIterator(). Implementations that keep subtree sizes answer this
+     * without visiting the values in the range.
+     * @param lowerBound is the lower end of the range, null for no lower end
+     * @param lowerInclusive is true when values equal to lowerBound are counted
+     * @param upperBound is the upper end of the range, null for no upper end
+     * @param upperInclusive is true when values equal to upperBound are counted
+     * @return the number of values within the range
+     */
+    public default int countInRange(Comparable<T> lowerBound, boolean lowerInclusive,
+                                    Comparable<T> upperBound, boolean upperInclusive) {
+        int count = 0;
+        Iterator<T> iterator = rangeIterator(lowerBound, lowerInclusive, upperBound, upperInclusive);
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        return count;
+    }
 }
@@ -0,0 +1,250 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Static k-d tree over the numeric attributes of a fixed list of songs. Each
+ * level of the tree splits the songs at the median of one attribute, cycling
+ * through the attributes, so a box query only visits the subtrees whose
+ * half-space overlaps the box, and a nearest-neighbour search only visits the
+ * subtrees that could hold a song closer than the closest found so far.
+ *
+ * The tree is stored implicitly: the songs are kept in one array in which the
+ * root of the range [from, to) is at its middle, the left subtree in the first
+ * half and the right subtree in the second half. The attribute values are
+ * copied into one flat int array, so that a search does not call the getters.
+ */
+public class KDTree {
+
+    // The attributes songs are indexed by when no others are given
+    public static final SongAttribute[] DIMENSIONS = {
+        SongAttribute.BPM, SongAttribute.ENERGY, SongAttribute.DANCEABILITY,
+        SongAttribute.LOUDNESS, SongAttribute.LIVENESS
+    };
+
+    private final SongAttribute[] dimensions;
+    private final SongInterface[] songs;
+    private final int[] positions; // position of each song in the given list
+    private final int[] coordinates; // song i has attribute d at i * k + d
+
+    /**
+     * Builds a k-d tree over songs by BPM, energy, danceability, loudness and liveness.
+     * @param songs are the songs to index
+     */
+    public KDTree(Collection<? extends SongInterface> songs) {
+        this(songs, DIMENSIONS);
+    }
+
+    /**
+     * Builds a k-d tree over songs, in O(n log^2 n) time.
+     * @param songs are the songs to index
+     * @param dimensions are the attributes to index songs by
+     * @throws IllegalArgumentException when no attributes are given
+     */
+    public KDTree(Collection<? extends SongInterface> songs, SongAttribute... dimensions) {
+        if (dimensions.length == 0) {
+            throw new IllegalArgumentException("A k-d tree needs at least one dimension");
+        }
+        this.dimensions = dimensions.clone();
+        SongInterface[] given = songs.toArray(new SongInterface[0]);
+        int k = dimensions.length;
+        int[] givenCoordinates = new int[given.length * k];
+        Integer[] order = new Integer[given.length];
+        for (int i = 0; i < given.length; i++) {
+            order[i] = i;
+            for (int d = 0; d < k; d++) {
+                givenCoordinates[i * k + d] = dimensions[d].of(given[i]);
+            }
+        }
+        build(givenCoordinates, order, 0, order.length, 0);
+
+        this.songs = new SongInterface[given.length];
+        this.positions = new int[given.length];
+        this.coordinates = new int[given.length * k];
+        for (int i = 0; i < given.length; i++) {
+            this.songs[i] = given[order[i]];
+            this.positions[i] = order[i];
+            System.arraycopy(givenCoordinates, order[i] * k, coordinates, i * k, k);
+        }
+    }
+
+    /**
+     * Places the position of the median song of order[from, to) by the
+     * attribute of depth at the middle of the range, smaller songs before it
+     * and larger songs after it, and does the same for both halves with the
+     * next attribute.
+     */
+    private void build(int[] givenCoordinates, Integer[] order, int from, int to, int depth) {
+        if (to - from <= 1) {
+            return;
+        }
+        int k = dimensions.length;
+        int d = depth % k;
+        Arrays.sort(order, from, to, Comparator.comparingInt(position -> givenCoordinates[position * k + d]));
+        int middle = (from + to) >>> 1;
+        build(givenCoordinates, order, from, middle, depth + 1);
+        build(givenCoordinates, order, middle + 1, to, depth + 1);
+    }
+
+    /**
+     * @return the number of indexed songs
+     */
+    public int size() {
+        return songs.length;
+    }
+
+    /**
+     * @return the attributes songs are indexed by, in the order that bounds
+     *     and points are given in
+     */
+    public SongAttribute[] dimensions() {
+        return dimensions.clone();
+    }
+
+    /**
+     * @return a point of this tree's dimensions for the attributes of song
+     */
+    public int[] pointOf(SongInterface song) {
+        int[] point = new int[dimensions.length];
+        for (int d = 0; d < dimensions.length; d++) {
+            point[d] = dimensions[d].of(song);
+        }
+        return point;
+    }
+
+    /**
+     * Finds every song whose attributes are all within the box from low to high.
+     * Use Integer.MIN_VALUE or Integer.MAX_VALUE for a side without a bound.
+     * @param low are the inclusive lower bounds, in the order of dimensions()
+     * @param high are the inclusive upper bounds, in the order of dimensions()
+     * @return the songs within the box, in no particular order
+     * @throws IllegalArgumentException when there is not one bound per dimension
+     */
+    public List<SongInterface> rangeQuery(int[] low, int[] high) {
+        if (low.length != dimensions.length || high.length != dimensions.length) {
+            throw new IllegalArgumentException("Expected " + dimensions.length + " bounds per side");
+        }
+        List<SongInterface> result = new ArrayList<>();
+        rangeQuery(0, songs.length, 0, low, high, result);
+        return result;
+    }
+
+    private void rangeQuery(int from, int to, int depth, int[] low, int[] high, List<SongInterface> result) {
+        int k = dimensions.length;
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            int d = depth % k;
+            int value = coordinates[middle * k + d];
+            boolean inBox = true;
+            for (int i = 0; i < k && inBox; i++) {
+                int coordinate = coordinates[middle * k + i];
+                inBox = coordinate >= low[i] && coordinate <= high[i];
+            }
+            if (inBox) {
+                result.add(songs[middle]);
+            }
+            // Equal values can be on both sides of the median after sorting
+            boolean goLeft = low[d] <= value;
+            boolean goRight = high[d] >= value;
+            if (goLeft && goRight) {
+                rangeQuery(from, middle, depth + 1, low, high, result);
+                from = middle + 1;
+            } else if (goLeft) {
+                to = middle;
+            } else if (goRight) {
+                from = middle + 1;
+            } else {
+                return;
+            }
+            depth++;
+        }
+    }
+
+    /**
+     * Finds the count songs closest to song by Euclidean distance over the
+     * dimensions of this tree, leaving out song itself (by reference).
+     * @param song is the song to find similar songs for
+     * @param count is the most songs to return
+     * @return the closest songs, closest first, songs at the same distance in
+     *     the order they were given in
+     */
+    public List<SongInterface> nearest(SongInterface song, int count) {
+        List<SongInterface> result = nearest(pointOf(song), count + 1);
+        if (!result.remove(song) && result.size() > count) {
+            result.remove(result.size() - 1);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the count songs closest to point by Euclidean distance. A max-heap
+     * keeps the closest songs found so far, and a subtree is skipped when the
+     * distance from point to its splitting plane is larger than the distance
+     * to the farthest of them.
+     * @param point are the attribute values to search around, in the order of dimensions()
+     * @param count is the most songs to return
+     * @return the closest songs, closest first
+     * @throws IllegalArgumentException when point does not have one value per dimension
+     */
+    public List<SongInterface> nearest(int[] point, int count) {
+        if (point.length != dimensions.length) {
+            throw new IllegalArgumentException("Expected a point of " + dimensions.length + " values");
+        }
+        // Entries are {distance squared, position in the given list, index},
+        // with the farthest (and among equals, the latest given) song on top
+        PriorityQueue<long[]> closest = new PriorityQueue<>(Math.max(1, count),
+                (a, b) -> a[0] != b[0] ? Long.compare(b[0], a[0]) : Long.compare(b[1], a[1]));
+        if (count > 0) {
+            nearest(0, songs.length, 0, point, count, closest);
+        }
+
+        long[][] found = closest.toArray(new long[0][]);
+        Arrays.sort(found, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        List<SongInterface> result = new ArrayList<>(found.length);
+        for (long[] entry : found) {
+            result.add(songs[(int) entry[2]]);
+        }
+        return result;
+    }
+
+    private void nearest(int from, int to, int depth, int[] point, int count, PriorityQueue<long[]> closest) {
+        if (from >= to) {
+            return;
+        }
+        int k = dimensions.length;
+        int middle = (from + to) >>> 1;
+        long distance = 0;
+        for (int i = 0; i < k; i++) {
+            long difference = coordinates[middle * k + i] - point[i];
+            distance += difference * difference;
+        }
+        offer(closest, count, new long[] {distance, positions[middle], middle});
+
+        int d = depth % k;
+        long plane = point[d] - coordinates[middle * k + d];
+        // Searching the side of point first finds close songs sooner
+        if (plane < 0) {
+            nearest(from, middle, depth + 1, point, count, closest);
+            if (closest.size() < count || plane * plane <= closest.peek()[0]) {
+                nearest(middle + 1, to, depth + 1, point, count, closest);
+            }
+        } else {
+            nearest(middle + 1, to, depth + 1, point, count, closest);
+            if (closest.size() < count || plane * plane <= closest.peek()[0]) {
+                nearest(from, middle, depth + 1, point, count, closest);
+            }
+        }
+    }
+
+    private static void offer(PriorityQueue<long[]> closest, int count, long[] entry) {
+        if (closest.size() < count) {
+            closest.add(entry);
+        } else if (closest.comparator().compare(entry, closest.peek()) > 0) {
+            closest.poll();
+            closest.add(entry);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Reads songs from a .csv file by memory-mapping the file and parsing the
+ * mapped bytes directly. Numeric columns are parsed straight from the bytes,
+ * so the only objects created per row are the three text fields and the Song
+ * itself.
+ *
+ * Quote handling matches Backend.readDataWithScanner(): every '"' toggles
+ * whether commas separate fields and is dropped from the value, and every
+ * line (\n, \r\n or \r terminated) is one row.
+ *
+ * Because a line break always ends a row, even inside quotes, the file can be
+ * split at any line break and the pieces parsed independently. This is what
+ * readSongsParallel() does: a quoted title such as "Hey, Soul Sister" only
+ * spans commas, never line breaks, so it is never cut in half.
+ */
+public class MappedSongReader {
+
+    // number of leading columns that are turned into a Song, the rest are ignored
+    private static final int FIELD_COUNT = 9;
+
+    // default number of bytes parsed by each fork/join task
+    private static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    private final MappedByteBuffer buffer;
+    private final int length;
+    private final Charset charset = Charset.defaultCharset();
+
+    /**
+     * Maps the provided file into memory.
+     * @param filename is the name of the csv file to read
+     * @throws IOException when there is trouble finding/mapping the file
+     */
+    public MappedSongReader(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to be mapped: " + filename);
+            }
+            this.length = (int) size;
+            // the mapping stays valid after the channel is closed
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * @return the number of bytes in the mapped file
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return the offset of the first row after the header line
+     */
+    public int firstRowOffset() {
+        return nextLineStart(0);
+    }
+
+    /**
+     * Finds the start of the line following the one containing offset.
+     * @param offset is any position within the file
+     * @return offset of the next line, or length() when there is none
+     */
+    public int nextLineStart(int offset) {
+        int i = offset;
+        while (i < length) {
+            byte b = buffer.get(i++);
+            if (b == '\n') {
+                return i;
+            } else if (b == '\r') {
+                // \r\n counts as a single line break
+                if (i < length && buffer.get(i) == '\n') {
+                    i++;
+                }
+                return i;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Parses every row of the file, skipping the header line.
+     * @return the songs in the order they appear in the file
+     * @throws IOException when a row does not have enough columns
+     */
+    public List<SongInterface> readSongs() throws IOException {
+        List<SongInterface> songs = new ArrayList<>();
+        readSongs(firstRowOffset(), length, songs);
+        return songs;
+    }
+
+    /**
+     * Parses every row of the file, skipping the header line, by splitting the
+     * file into line aligned chunks that are parsed by the tasks of pool.
+     * @param pool is the fork/join pool that parses the chunks
+     * @return the songs in the order they appear in the file, exactly as
+     *     returned by readSongs()
+     * @throws IOException when a row does not have enough columns
+     */
+    public List<SongInterface> readSongsParallel(ForkJoinPool pool) throws IOException {
+        return readSongsParallel(pool, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Parses every row of the file like readSongsParallel(pool), with each task
+     * parsing roughly chunkSize bytes.
+     * @param pool is the fork/join pool that parses the chunks
+     * @param chunkSize is the approximate number of bytes per chunk
+     * @return the songs in the order they appear in the file
+     * @throws IOException when a row does not have enough columns
+     */
+    public List<SongInterface> readSongsParallel(ForkJoinPool pool, int chunkSize) throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunk size must be positive");
+        }
+        // Splits the rows into chunks that each start at a line start
+        int first = firstRowOffset();
+        int chunks = Math.max(1, (int) (((long) length - first + chunkSize - 1) / chunkSize));
+        int[] bounds = new int[chunks + 1];
+        bounds[0] = first;
+        for (int i = 1; i < chunks; i++) {
+            long target = first + (long) i * chunkSize;
+            bounds[i] = Math.max(bounds[i - 1], nextLineStart((int) target - 1));
+        }
+        bounds[chunks] = length;
+
+        // Each task sets only its own chunk's slot, and invoke() waits for all of them
+        List<List<SongInterface>> parts = new ArrayList<>(Collections.nCopies(chunks, null));
+        try {
+            pool.invoke(new ParseTask(bounds, parts, 0, chunks));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        // Concatenates the chunks in file order
+        int total = 0;
+        for (List<SongInterface> part : parts) {
+            total += part.size();
+        }
+        List<SongInterface> songs = new ArrayList<>(total);
+        for (List<SongInterface> part : parts) {
+            songs.addAll(part);
+        }
+        return songs;
+    }
+
+    /**
+     * Parses every row that starts within [start, end). Both offsets are
+     * expected to be line starts (or length()).
+     * @param start is the offset of the first row to parse
+     * @param end is the offset after the last row to parse
+     * @param songs is the list the parsed songs are appended to
+     * @throws IOException when a row does not have enough columns
+     * @throws NumberFormatException when a numeric column is not an integer
+     */
+    public void readSongs(int start, int end, List<SongInterface> songs) throws IOException {
+        RowParser parser = new RowParser();
+        int position = start;
+        while (position < end) {
+            position = parser.parseRow(position);
+            if (parser.fieldCount == 0) {
+                continue; // blank line
+            }
+            if (parser.fieldCount < FIELD_COUNT) {
+                throw new IOException("Row has " + parser.fieldCount + " columns, expected at least "
+                        + FIELD_COUNT + ": " + decode(parser.rowStart, parser.rowEnd));
+            }
+            int[] n = parser.numbers;
+            songs.add(new Song(parser.text[0], parser.text[1], parser.text[2],
+                    n[3], n[4], n[5], n[6], n[7], n[8]));
+        }
+    }
+
+    private String decode(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(from + i);
+        }
+        return new String(bytes, charset);
+    }
+
+    /**
+     * Parses the chunks [from, to) by splitting them in half until a single
+     * chunk is left, which is then parsed into its own list.
+     */
+    private class ParseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] bounds;
+        private final List<List<SongInterface>> parts;
+        private final int from;
+        private final int to;
+
+        private ParseTask(int[] bounds, List<List<SongInterface>> parts, int from, int to) {
+            this.bounds = bounds;
+            this.parts = parts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParseTask(bounds, parts, from, middle),
+                        new ParseTask(bounds, parts, middle, to));
+                return;
+            }
+            List<SongInterface> part = new ArrayList<>();
+            try {
+                readSongs(bounds[from], bounds[from + 1], part);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            parts.set(from, part);
+        }
+    }
+
+    /**
+     * Holds the reusable scratch state for parsing rows, so that one instance
+     * can be used per thread.
+     */
+    private class RowParser {
+        private byte[] scratch = new byte[256];
+        private final String[] text = new String[3];
+        // one shared instance per distinct genres string, as a few genres fill most rows
+        private final Map<String, String> genres = new HashMap<>();
+        private final int[] numbers = new int[FIELD_COUNT];
+        private int fieldCount;
+        private int rowStart;
+        private int rowEnd;
+
+        /**
+         * Parses the row starting at offset into text and numbers.
+         * @return the offset of the next row
+         */
+        private int parseRow(int offset) {
+            rowStart = offset;
+            fieldCount = 0;
+            boolean inQuotes = false;
+            int textLength = 0;
+            // state of the numeric field being parsed
+            boolean negative = false;
+            boolean valid = true;
+            int digits = 0;
+            int fieldLength = 0;
+            long value = 0;
+
+            int i = offset;
+            while (true) {
+                byte b = i < length ? buffer.get(i) : (byte) '\n';
+                boolean endOfLine = i >= length || b == '\n' || b == '\r';
+                if (endOfLine && fieldCount == 0 && i == offset) {
+                    break; // blank line: no fields
+                }
+                if (endOfLine || (b == ',' && !inQuotes)) {
+                    // finish the current field
+                    if (fieldCount < 3) {
+                        text[fieldCount] = new String(scratch, 0, textLength, charset);
+                        if (fieldCount == 2) {
+                            text[2] = genres.computeIfAbsent(text[2], key -> key);
+                        }
+                        textLength = 0;
+                    } else if (fieldCount < FIELD_COUNT) {
+                        if (!valid || digits == 0 || value > (negative ? 2147483648L : 2147483647L)) {
+                            throw new NumberFormatException("For input string: \""
+                                    + fieldText(i) + "\"");
+                        }
+                        numbers[fieldCount] = (int) (negative ? -value : value);
+                    }
+                    fieldCount++;
+                    negative = false;
+                    valid = true;
+                    digits = 0;
+                    fieldLength = 0;
+                    value = 0;
+                    if (endOfLine) {
+                        break;
+                    }
+                    if (fieldCount >= FIELD_COUNT) {
+                        // remaining columns are not needed, skip to the line break
+                        i++;
+                        while (i < length && buffer.get(i) != '\n' && buffer.get(i) != '\r') {
+                            i++;
+                        }
+                        continue;
+                    }
+                } else if (b == '"') {
+                    inQuotes = !inQuotes;
+                } else if (fieldCount < 3) {
+                    if (textLength == scratch.length) {
+                        scratch = Arrays.copyOf(scratch, scratch.length * 2);
+                    }
+                    scratch[textLength++] = b;
+                } else if (fieldCount < FIELD_COUNT) {
+                    if (b >= '0' && b <= '9') {
+                        digits++;
+                        // cap the value so that overflow is still detected
+                        value = Math.min(value * 10 + (b - '0'), 1L << 32);
+                    } else if (fieldLength == 0 && (b == '-' || b == '+')) {
+                        negative = b == '-';
+                    } else {
+                        valid = false;
+                    }
+                    fieldLength++;
+                }
+                i++;
+            }
+            rowEnd = i;
+            return nextLineStart(i);
+        }
+
+        /**
+         * Recovers the text of the numeric field ending at end, for error messages.
+         */
+        private String fieldText(int end) {
+            int start = end;
+            while (start > rowStart && (buffer.get(start - 1) != ',')) {
+                start--;
+            }
+            return decode(start, end).replace("\"", "");
+        }
+    }
+}
@@ -0,0 +1,587 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Red-black tree whose nodes are never changed once they are created. Insert
+ * and remove copy the nodes on the path from the root to the change, share
+ * every other node with the previous version, and then publish the new root
+ * with a single volatile write.
+ *
+ * Readers never lock: an iterator keeps the root that was published when it
+ * was created, so it sees every value of that version and none of the changes
+ * made while it runs, even while a writer is rebalancing the tree. Writers
+ * are serialized by the tree's lock. snapshot() returns such a version as an
+ * independent tree in O(1) time.
+ *
+ * Inserts follow Okasaki's balance cases, removes follow Kahrs' deletion for
+ * persistent red-black trees. Values equal to values in the tree are allowed,
+ * and every node keeps the size of its subtree for rank() and select().
+ */
+public class PersistentRedBlackTree<T extends Comparable<T>> implements IterableSortedCollection<T> {
+
+    /**
+     * An immutable node. Changing a tree creates new nodes instead.
+     */
+    protected static final class Node<T> {
+        public final T data;
+        public final Node<T> left;
+        public final Node<T> right;
+        public final boolean isBlack;
+        public final int size; // the number of nodes in the subtree rooted here
+
+        public Node(boolean isBlack, Node<T> left, T data, Node<T> right) {
+            this.data = data;
+            this.left = left;
+            this.right = right;
+            this.isBlack = isBlack;
+            this.size = 1 + sizeOf(left) + sizeOf(right);
+        }
+    }
+
+    // the published version, read without locking
+    private volatile Node<T> root;
+
+    // changed under the tree's lock after each new version is published
+    private volatile int modificationCount = 0;
+
+    private Comparable<T> iterationStartPoint = null;
+
+    /**
+     * Returns the current version of this tree as a separate tree. The two
+     * share their nodes, and changes to either one are not seen by the other.
+     * @return a tree holding the values that this tree holds now
+     */
+    public PersistentRedBlackTree<T> snapshot() {
+        PersistentRedBlackTree<T> snapshot = new PersistentRedBlackTree<>();
+        snapshot.root = root;
+        return snapshot;
+    }
+
+    /**
+     * Inserts a new value before any values in the tree that are equal to it,
+     * and publishes the new version of the tree.
+     * @param value to be added into this tree
+     * @return true, as every value is inserted
+     * @throws NullPointerException when the provided value is null
+     */
+    public synchronized boolean insert(T value) throws NullPointerException {
+        if (value == null)
+            throw new NullPointerException("Cannot insert data value null into the tree.");
+        root = blacken(insertInto(root, value));
+        modificationCount++;
+        return true;
+    }
+
+    private Node<T> insertInto(Node<T> node, T value) {
+        if (node == null) {
+            return new Node<>(false, null, value, null);
+        }
+        if (value.compareTo(node.data) <= 0) {
+            Node<T> left = insertInto(node.left, value);
+            return node.isBlack ? balance(left, node.data, node.right) : new Node<>(false, left, node.data, node.right);
+        } else {
+            Node<T> right = insertInto(node.right, value);
+            return node.isBlack ? balance(node.left, node.data, right) : new Node<>(false, node.left, node.data, right);
+        }
+    }
+
+    /**
+     * Builds a black node from left, data and right, resolving a red child
+     * that has a red child of its own by making the middle of the three
+     * values a red node with two black children.
+     */
+    private static <T> Node<T> balance(Node<T> left, T data, Node<T> right) {
+        // Case 1: both children are red
+        if (isRed(left) && isRed(right)) {
+            return new Node<>(false, blacken(left), data, blacken(right));
+        }
+        // Case 2: red left child with a red left child
+        if (isRed(left) && isRed(left.left)) {
+            return new Node<>(false, blacken(left.left), left.data, new Node<>(true, left.right, data, right));
+        }
+        // Case 3: red left child with a red right child
+        if (isRed(left) && isRed(left.right)) {
+            return new Node<>(false, new Node<>(true, left.left, left.data, left.right.left), left.right.data,
+                    new Node<>(true, left.right.right, data, right));
+        }
+        // Case 4: red right child with a red right child
+        if (isRed(right) && isRed(right.right)) {
+            return new Node<>(false, new Node<>(true, left, data, right.left), right.data, blacken(right.right));
+        }
+        // Case 5: red right child with a red left child
+        if (isRed(right) && isRed(right.left)) {
+            return new Node<>(false, new Node<>(true, left, data, right.left.left), right.left.data,
+                    new Node<>(true, right.left.right, right.data, right.right));
+        }
+        return new Node<>(true, left, data, right);
+    }
+
+    /**
+     * Inserts every value of data by merging the sorted values with the values
+     * of the tree into a new, balanced version that is published at once.
+     * Readers see either none or all of the values of the batch.
+     * @param data are the values to insert
+     * @throws NullPointerException when data or any of its values is null
+     */
+    @Override
+    public synchronized void insertAll(Collection<? extends T> data) throws NullPointerException {
+        Object[] batch = data.toArray();
+        for (Object value : batch) {
+            if (value == null)
+                throw new NullPointerException("Cannot insert data value null into the tree.");
+        }
+        Arrays.sort(batch);
+        IterableRedBlackTree.reverseEqualRuns(batch);
+
+        // Merges the current values (in order) with the sorted batch
+        Object[] merged = new Object[size() + batch.length];
+        Iterator<T> current = rangeIterator(null, true, null, true);
+        T next = current.hasNext() ? current.next() : null;
+        int j = 0;
+        int k = 0;
+        while (next != null || j < batch.length) {
+            if (j < batch.length && (next == null || compare(batch[j], next) <= 0)) {
+                merged[k++] = batch[j++];
+            } else {
+                merged[k++] = next;
+                next = current.hasNext() ? current.next() : null;
+            }
+        }
+        // only the deepest level, the one that can be incomplete, is red
+        int redDepth = 31 - Integer.numberOfLeadingZeros(Math.max(merged.length, 1));
+        root = buildBalanced(merged, 0, merged.length - 1, 0, redDepth);
+        modificationCount++;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node<T> buildBalanced(Object[] values, int from, int to, int depth, int redDepth) {
+        if (from > to) {
+            return null;
+        }
+        int middle = (from + to) >>> 1;
+        Node<T> left = buildBalanced(values, from, middle - 1, depth + 1, redDepth);
+        Node<T> right = buildBalanced(values, middle + 1, to, depth + 1, redDepth);
+        return new Node<>(depth == 0 || depth != redDepth, left, (T) values[middle], right);
+    }
+
+    /**
+     * Removes one value that is equal to key, and publishes the new version
+     * of the tree.
+     * @param key a comparable for the value to remove
+     * @return true if a value was removed, false if no such value was in the tree
+     * @throws NullPointerException when the provided key is null
+     */
+    public synchronized boolean remove(Comparable<T> key) throws NullPointerException {
+        if (key == null)
+            throw new NullPointerException("This tree cannot store null references.");
+        // the deletion cases rely on key being in the tree
+        if (!contains(key)) {
+            return false;
+        }
+        root = blacken(removeFrom(root, key));
+        modificationCount++;
+        return true;
+    }
+
+    private Node<T> removeFrom(Node<T> node, Comparable<T> key) {
+        int compare = key.compareTo(node.data);
+        if (compare < 0) {
+            Node<T> left = removeFrom(node.left, key);
+            return isBlackNode(node.left) ? balanceLeft(left, node.data, node.right)
+                    : new Node<>(false, left, node.data, node.right);
+        } else if (compare > 0) {
+            Node<T> right = removeFrom(node.right, key);
+            return isBlackNode(node.right) ? balanceRight(node.left, node.data, right)
+                    : new Node<>(false, node.left, node.data, right);
+        }
+        return fuse(node.left, node.right);
+    }
+
+    /**
+     * Builds a node from left, data and right, where left has one black node
+     * less on its paths than right.
+     */
+    private static <T> Node<T> balanceLeft(Node<T> left, T data, Node<T> right) {
+        // Case 1: left is red, blackening it restores the black height
+        if (isRed(left)) {
+            return new Node<>(false, blacken(left), data, right);
+        }
+        // Case 2: right is black, make it red and balance
+        if (isBlackNode(right)) {
+            return balance(left, data, redden(right));
+        }
+        // Case 3: right is red with a black left child
+        Node<T> middle = right.left;
+        return new Node<>(false, new Node<>(true, left, data, middle.left), middle.data,
+                balance(middle.right, right.data, redden(right.right)));
+    }
+
+    /**
+     * Builds a node from left, data and right, where right has one black node
+     * less on its paths than left.
+     */
+    private static <T> Node<T> balanceRight(Node<T> left, T data, Node<T> right) {
+        // Case 1: right is red, blackening it restores the black height
+        if (isRed(right)) {
+            return new Node<>(false, left, data, blacken(right));
+        }
+        // Case 2: left is black, make it red and balance
+        if (isBlackNode(left)) {
+            return balance(redden(left), data, right);
+        }
+        // Case 3: left is red with a black right child
+        Node<T> middle = left.right;
+        return new Node<>(false, balance(redden(left.left), left.data, middle.left), middle.data,
+                new Node<>(true, middle.right, data, right));
+    }
+
+    /**
+     * Joins two subtrees of the same black height whose values are all in
+     * order, after the node between them is removed.
+     */
+    private static <T> Node<T> fuse(Node<T> left, Node<T> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        // Case 1: black and red, fuse left into the red node's left subtree
+        if (left.isBlack && !right.isBlack) {
+            return new Node<>(false, fuse(left, right.left), right.data, right.right);
+        }
+        // Case 2: red and black, fuse right into the red node's right subtree
+        if (!left.isBlack && right.isBlack) {
+            return new Node<>(false, left.left, left.data, fuse(left.right, right));
+        }
+        Node<T> inner = fuse(left.right, right.left);
+        // Case 3: both red
+        if (!left.isBlack) {
+            if (isRed(inner)) {
+                return new Node<>(false, new Node<>(false, left.left, left.data, inner.left), inner.data,
+                        new Node<>(false, inner.right, right.data, right.right));
+            }
+            return new Node<>(false, left.left, left.data, new Node<>(false, inner, right.data, right.right));
+        }
+        // Case 4: both black
+        if (isRed(inner)) {
+            return new Node<>(false, new Node<>(true, left.left, left.data, inner.left), inner.data,
+                    new Node<>(true, inner.right, right.data, right.right));
+        }
+        return balanceLeft(left.left, left.data, new Node<>(true, inner, right.data, right.right));
+    }
+
+    private static boolean isRed(Node<?> node) {
+        return node != null && !node.isBlack;
+    }
+
+    private static boolean isBlackNode(Node<?> node) {
+        return node != null && node.isBlack;
+    }
+
+    private static <T> Node<T> blacken(Node<T> node) {
+        return node == null || node.isBlack ? node : new Node<>(true, node.left, node.data, node.right);
+    }
+
+    private static <T> Node<T> redden(Node<T> node) {
+        return new Node<>(false, node.left, node.data, node.right);
+    }
+
+    private static int sizeOf(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object value, T other) {
+        return ((T) value).compareTo(other);
+    }
+
+    public boolean contains(Comparable<T> key) {
+        if (key == null) {
+            throw new NullPointerException("This tree cannot store null references.");
+        }
+        Node<T> current = root;
+        while (current != null) {
+            int compare = key.compareTo(current.data);
+            if (compare == 0) {
+                return true;
+            }
+            current = compare < 0 ? current.left : current.right;
+        }
+        return false;
+    }
+
+    public int size() {
+        return sizeOf(root);
+    }
+
+    public int modificationCount() {
+        return modificationCount;
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    public synchronized void clear() {
+        root = null;
+        modificationCount++;
+    }
+
+    /**
+     * Counts the values smaller than key in the current version, in O(log n).
+     */
+    @Override
+    public int rank(Comparable<T> key) {
+        return countBefore(root, key, false);
+    }
+
+    /**
+     * Finds the value at a position of the current version, in O(log n).
+     */
+    @Override
+    public T select(int index) throws IndexOutOfBoundsException {
+        Node<T> current = root;
+        if (index < 0 || index >= sizeOf(current)) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + sizeOf(current));
+        }
+        while (true) {
+            int leftSize = sizeOf(current.left);
+            if (index < leftSize) {
+                current = current.left;
+            } else if (index == leftSize) {
+                return current.data;
+            } else {
+                index -= leftSize + 1;
+                current = current.right;
+            }
+        }
+    }
+
+    /**
+     * Counts the values between lowerBound and upperBound in the current
+     * version, in O(log n).
+     */
+    @Override
+    public int countInRange(Comparable<T> lowerBound, boolean lowerInclusive,
+                            Comparable<T> upperBound, boolean upperInclusive) {
+        Node<T> version = root;
+        int below = lowerBound == null ? 0 : countBefore(version, lowerBound, !lowerInclusive);
+        int notAbove = upperBound == null ? sizeOf(version) : countBefore(version, upperBound, upperInclusive);
+        return Math.max(0, notAbove - below);
+    }
+
+    private static <T> int countBefore(Node<T> node, Comparable<T> bound, boolean includeEqual) {
+        int count = 0;
+        while (node != null) {
+            int compare = bound.compareTo(node.data);
+            if (compare > 0 || (compare == 0 && includeEqual)) {
+                count += sizeOf(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    public void setIterationStartPoint(Comparable<T> startPoint) {
+        iterationStartPoint = startPoint;
+    }
+
+    public Iterator<T> iterator() {
+        return rangeIterator(iterationStartPoint, true, null, true);
+    }
+
+    /**
+     * Returns an iterator over the values between lowerBound and upperBound of
+     * the version of the tree that is published when this method is called.
+     * @param lowerBound is the lower end of the range, null for no lower end
+     * @param lowerInclusive is true when values equal to lowerBound are included
+     * @param upperBound is the upper end of the range, null for no upper end
+     * @param upperInclusive is true when values equal to upperBound are included
+     * @return an iterator over the values in the range
+     */
+    public Iterator<T> rangeIterator(Comparable<T> lowerBound, boolean lowerInclusive,
+                                     Comparable<T> upperBound, boolean upperInclusive) {
+        Node<T> version = root;
+        return new Iterator<T>() {
+            // the nodes whose value and right subtree are left to visit, a
+            // red-black tree of 2^31 values is at most 62 levels deep
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            private final Node<T>[] stack = (Node<T>[]) new Node[64];
+            private int depth = 0;
+            {
+                pushLeft(version);
+                skipAboveRange();
+            }
+
+            private boolean isBelowRange(T value) {
+                if (lowerBound == null) {
+                    return false;
+                }
+                int compare = lowerBound.compareTo(value);
+                return compare > 0 || (compare == 0 && !lowerInclusive);
+            }
+
+            /**
+             * Pushes node and its left descendants, skipping over those below the range.
+             */
+            private void pushLeft(Node<T> node) {
+                while (node != null) {
+                    if (isBelowRange(node.data)) {
+                        node = node.right;
+                    } else {
+                        stack[depth++] = node;
+                        node = node.left;
+                    }
+                }
+            }
+
+            private void skipAboveRange() {
+                if (depth == 0 || upperBound == null) {
+                    return;
+                }
+                int compare = upperBound.compareTo(stack[depth - 1].data);
+                if (compare < 0 || (compare == 0 && !upperInclusive)) {
+                    depth = 0;
+                }
+            }
+
+            public boolean hasNext() {
+                return depth > 0;
+            }
+
+            public T next() {
+                if (depth == 0) {
+                    throw new NoSuchElementException();
+                }
+                Node<T> node = stack[--depth];
+                stack[depth] = null;
+                pushLeft(node.right);
+                skipAboveRange();
+                return node.data;
+            }
+        };
+    }
+
+    /**
+     * Checks that the current version is a valid red-black tree: values are
+     * in order, the root is black, no red node has a red child, every path
+     * passes through the same number of black nodes, and subtree sizes match.
+     * @return the black height of the tree (0 when the tree is empty)
+     * @throws IllegalStateException describing the first violation found
+     */
+    public int validateRBTree() throws IllegalStateException {
+        Node<T> version = root;
+        if (isRed(version)) {
+            throw new IllegalStateException("Root is red");
+        }
+        return validateRBTreeHelper(version);
+    }
+
+    private int validateRBTreeHelper(Node<T> node) {
+        if (node == null) {
+            return 0;
+        }
+        if (node.left != null && node.left.data.compareTo(node.data) > 0
+                || node.right != null && node.right.data.compareTo(node.data) < 0) {
+            throw new IllegalStateException("Child of " + node.data + " is out of order");
+        }
+        if (!node.isBlack && (isRed(node.left) || isRed(node.right))) {
+            throw new IllegalStateException("Red node " + node.data + " has a red child");
+        }
+        if (node.size != 1 + sizeOf(node.left) + sizeOf(node.right)) {
+            throw new IllegalStateException("Size of " + node.data + " is wrong");
+        }
+        int leftHeight = validateRBTreeHelper(node.left);
+        if (leftHeight != validateRBTreeHelper(node.right)) {
+            throw new IllegalStateException("Paths below " + node.data + " have different black heights");
+        }
+        return leftHeight + (node.isBlack ? 1 : 0);
+    }
+
+    /**
+     * Tests if random inserts and removes keep a valid tree that holds the same values
+     * as IterableRedBlackTree, and that snapshots keep their values
+     */
+    @Test
+    public void testInsertAndRemove() {
+        Random random = new Random(400);
+        PersistentRedBlackTree<Integer> tree = new PersistentRedBlackTree<>();
+        IterableRedBlackTree<Integer> expected = new IterableRedBlackTree<>();
+        PersistentRedBlackTree<Integer> snapshot = null;
+        List<Integer> snapshotValues = null;
+        for (int i = 0; i < 5000; i++) {
+            int value = random.nextInt(500);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(value), tree.remove(value), "remove(" + value + ")");
+            } else {
+                tree.insert(value);
+                expected.insert(value);
+            }
+            tree.validateRBTree();
+            if (i == 2500) {
+                snapshot = tree.snapshot();
+                snapshotValues = new ArrayList<>();
+                tree.forEach(snapshotValues::add);
+            }
+        }
+        assertEquals(expected.size(), tree.size());
+        assertIterableEquals(expected, tree);
+        assertEquals(expected.countInRange(100, true, 200, false), tree.countInRange(100, true, 200, false));
+        assertEquals(expected.select(expected.size() / 2), tree.select(tree.size() / 2));
+
+        // The snapshot should not see any change made after it was taken
+        assertIterableEquals(snapshotValues, snapshot);
+        snapshot.insert(-1);
+        assertFalse(tree.contains(-1), "Change to snapshot leaked into the tree");
+    }
+
+    /**
+     * Tests if a reader iterating while a writer inserts and removes always sees a
+     * complete, sorted version of the tree
+     */
+    @Test
+    public void testReadersDuringWrites() throws InterruptedException {
+        PersistentRedBlackTree<Integer> tree = new PersistentRedBlackTree<>();
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            values.add(i * 2);
+        }
+        tree.insertAll(values);
+
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 20000; i++) {
+                tree.insert(i * 2 + 1);
+                tree.remove(i * 2 + 1);
+            }
+        });
+        writer.start();
+        int scans = 0;
+        while (writer.isAlive() || scans < 5) {
+            // Every version has the even values, plus at most one odd value
+            int count = 0;
+            int previous = -1;
+            for (int value : tree) {
+                assertTrue(previous < value, "Values out of order");
+                previous = value;
+                count++;
+            }
+            assertTrue(count == 10000 || count == 10001, "Scan saw " + count + " values");
+            scans++;
+        }
+        writer.join();
+        assertEquals(10000, tree.size());
+        tree.validateRBTree();
+    }
+}
@@ -0,0 +1,105 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of query results with least recently used eviction. The
+ * entries are kept in a LinkedHashMap in access order, so the eldest entry is
+ * always the least recently used one, and it is evicted once the cache holds
+ * more than capacity entries. Hits and misses are counted so that the
+ * capacity can be chosen from how often queries repeat.
+ */
+public class QueryCache<K, V> {
+
+    private int capacity;
+    private long hits = 0;
+    private long misses = 0;
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > capacity;
+        }
+    };
+
+    /**
+     * Creates an empty cache.
+     * @param capacity is the most results to keep, 0 to keep none
+     * @throws IllegalArgumentException when capacity is negative
+     */
+    public QueryCache(int capacity) {
+        setCapacity(capacity);
+    }
+
+    /**
+     * Returns the cached result for key, or computes, caches and returns it
+     * when there is none.
+     * @param key identifies the query, and has to implement equals and hashCode
+     * @param query computes the result on a miss
+     * @return the result for key
+     */
+    public V get(K key, Supplier<? extends V> query) {
+        V result = entries.get(key);
+        if (result != null) {
+            hits++;
+            return result;
+        }
+        misses++;
+        result = query.get();
+        if (capacity > 0) {
+            entries.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Removes every cached result, for when the data the queries read changes.
+     * The hit and miss counts are kept.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Changes the most results to keep, evicting the least recently used
+     * results that no longer fit.
+     * @param capacity is the most results to keep, 0 to keep none
+     * @throws IllegalArgumentException when capacity is negative
+     */
+    public void setCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity cannot be negative: " + capacity);
+        }
+        this.capacity = capacity;
+        Iterator<K> eldest = entries.keySet().iterator();
+        while (entries.size() > capacity) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of cached results
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of calls to get() that found a cached result
+     */
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of calls to get() that had to run the query
+     */
+    public long misses() {
+        return misses;
+    }
+}
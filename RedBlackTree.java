@@ -1,21 +1,77 @@
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class RedBlackTree<T extends Comparable<T>> extends BinarySearchTree<T>{
 
     /**
-     * Stores the color for each node in addition to the node's parent, children and data
+     * Stores the color for each node in addition to the node's parent, children and data,
+     * along with the number of nodes in the subtree rooted at this node
      * @param <T>
      */
     protected static class RBTNode<T> extends Node<T> {
         public boolean isBlack = false;
+        public int subtreeSize = 1;
         public RBTNode(T data) { super(data); }
         public RBTNode<T> getUp() { return (RBTNode<T>)this.up; }
         public RBTNode<T> getDownLeft() { return (RBTNode<T>)this.down[0]; }
         public RBTNode<T> getDownRight() { return (RBTNode<T>)this.down[1]; }
     }
 
+    /**
+     * @return the number of nodes in the subtree rooted at node, 0 for null
+     */
+    protected static int subtreeSize(Node<?> node) {
+        return node == null ? 0 : ((RBTNode<?>) node).subtreeSize;
+    }
+
+    /**
+     * Creates the node that holds data when it is inserted. Subclasses with
+     * more summary fields override this to create nodes that have them.
+     * @param data is the value of the node
+     * @return a red node without children
+     */
+    protected RBTNode<T> createNode(T data) {
+        return new RBTNode<>(data);
+    }
+
+    /**
+     * Recomputes the fields of node that summarize its subtree from the
+     * (already correct) fields of its children.
+     * @param node is the node to update
+     */
+    protected void updateAugmentedFields(RBTNode<T> node) {
+        node.subtreeSize = 1 + subtreeSize(node.down[0]) + subtreeSize(node.down[1]);
+    }
+
+    /**
+     * Recomputes the summary fields of node and of all of its ancestors, after
+     * a node was added or removed below node.
+     * @param node is the lowest node whose subtree changed
+     */
+    protected void updateAugmentedFieldsToRoot(Node<T> node) {
+        for (Node<T> current = node; current != null; current = current.up) {
+            updateAugmentedFields((RBTNode<T>) current);
+        }
+    }
+
+    /**
+     * Rotates child and parent like BinarySearchTree.rotate, and then updates
+     * the summary fields of both nodes. The subtree they form together holds the
+     * same nodes as before, so no other node is affected.
+     */
+    @Override
+    protected void rotate(Node<T> child, Node<T> parent) throws IllegalArgumentException {
+        super.rotate(child, parent);
+        updateAugmentedFields((RBTNode<T>) parent);
+        updateAugmentedFields((RBTNode<T>) child);
+    }
+
     /**
      * Resolves any red property violations that are introduced by inserting a new node
      * into the Red-Black Tree
@@ -24,84 +80,271 @@ public class RedBlackTree<T extends Comparable<T>> extends BinarySearchTree<T>{
     protected void enforceRBTreePropertiesAfterInsert(RBTNode<T> newNode) {
         newNode.isBlack = false; // Setting new node to red
 
-        // Violation for red node with red children
-        while (newNode != root && !newNode.isBlack && !newNode.getUp().isBlack) {
+        // Violation for red node with red parent
+        while (newNode != root && !newNode.getUp().isBlack) {
+            RBTNode<T> parent = newNode.getUp();
+            RBTNode<T> grandparent = parent.getUp(); // exists, since a red parent is never the root
+
             // If parent is a left child
-            boolean parentIsLeftChild = newNode.getUp().getUp().getDownLeft() == newNode.getUp();
+            boolean parentIsLeftChild = grandparent.getDownLeft() == parent;
 
-            // To get aunt
-            RBTNode<T> aunt = parentIsLeftChild ? newNode.getUp().getUp().getDownRight()
-                    : newNode.getUp().getUp().getDownLeft();
+            // To get aunt (a missing aunt counts as black)
+            RBTNode<T> aunt = parentIsLeftChild ? grandparent.getDownRight() : grandparent.getDownLeft();
 
             // Case 1: Red Aunt Case
             if (aunt != null && !aunt.isBlack) {
-                newNode.getUp().isBlack = true;
+                parent.isBlack = true;
                 aunt.isBlack = true;
-                newNode.getUp().getUp().isBlack = false;
-                newNode = newNode.getUp().getUp(); // Recurring case
+                grandparent.isBlack = false;
+                newNode = grandparent; // Recurring case
+                continue;
             }
-            else if (aunt != null && aunt.isBlack) {
-                if (parentIsLeftChild) {
-                    if (newNode == newNode.getUp().getDownLeft()) {
-                        newNode = newNode.getUp();
-                        rotate(newNode, newNode.getUp());
-                        newNode.getDownRight().isBlack = false;
-                        newNode.isBlack = true;
-                    }
-                    else {
-                        rotate(newNode, newNode.getUp());
-                        rotate(newNode, newNode.getUp());
-                        newNode.isBlack = true;
-                    }
-                }
-                else if (!parentIsLeftChild) {
-                    if (newNode == newNode.getUp().getDownRight()) {
-                        newNode = newNode.getUp();
-                        rotate(newNode, newNode.getUp());
-                        newNode.getDownLeft().isBlack = false;
-                        newNode.isBlack = true;
-                    }
-                    else {
-                        rotate(newNode, newNode.getUp());
-                        rotate(newNode, newNode.getUp());
-                        newNode.getDownLeft().isBlack = false;
-                        newNode.isBlack = true;
-                    }
-                }
+
+            // Case 2: Black Aunt, new node is on the inside (zig-zag), so rotate it
+            // into its parent's position to turn it into the outside case
+            if (newNode.isRightChild() == parentIsLeftChild) {
+                rotate(newNode, parent);
+                parent = newNode;
             }
 
-            // Other Case : No aunt and Parent is left child
-            if (parentIsLeftChild && aunt == null) {
-                if (newNode == newNode.getUp().getDownRight()) { // New Node is right child
-                    newNode.isBlack = true;
-                    newNode.getUp().getUp().isBlack = false;
-                    rotate(newNode, newNode.getUp());
-                    rotate(newNode, newNode.getUp());
-                    newNode = newNode.getDownRight();
-                }
-                else if (newNode == newNode.getUp().getDownLeft()) { // New Node is left child
-                    newNode = newNode.getUp();
-                    rotate(newNode, newNode.getUp());
-                    newNode.getDownRight().isBlack = false;
-                    newNode.isBlack = true;
-                }
+            // Case 3: Black Aunt, new node is on the outside (zig-zig)
+            rotate(parent, grandparent);
+            parent.isBlack = true;
+            grandparent.isBlack = false;
+            return;
+        }
+    }
+
+    /**
+     * Removes one value that is equal to data from the tree, and then restores
+     * the red-black tree properties.
+     * @param data a comparable for the data value to remove
+     * @return true if a value was removed, false if no such value was in the tree
+     * @throws NullPointerException when the provided data argument is null
+     */
+    @Override
+    public boolean remove(Comparable<T> data) throws NullPointerException {
+        if (data == null)
+            throw new NullPointerException("This tree cannot store null references.");
+        RBTNode<T> node = (RBTNode<T>) findNode(data);
+        if (node == null) {
+            return false;
+        }
+        if (node.down[0] != null && node.down[1] != null) {
+            // a node with two children takes over its successor's value, and the
+            // successor (which has no left child) is removed in its place
+            RBTNode<T> successor = node.getDownRight();
+            while (successor.down[0] != null) {
+                successor = successor.getDownLeft();
+            }
+            node.data = successor.data;
+            node = successor;
+        }
+
+        RBTNode<T> child = (RBTNode<T>) (node.down[0] != null ? node.down[0] : node.down[1]);
+        if (child != null) {
+            // a node with one child is black and its child is red, so the child
+            // can take its place and its color
+            child.isBlack = true;
+        } else if (node.isBlack) {
+            // removing a black leaf would shorten its paths, so fix the tree
+            // while the leaf is still in place
+            enforceRBTreePropertiesBeforeRemove(node);
+        }
+        Node<T> parent = node.up;
+        replaceNode(node, child);
+        updateAugmentedFieldsToRoot(parent);
+        this.size--;
+        return true;
+    }
+
+    /**
+     * Resolves the missing black node that removing the black leaf node would
+     * leave on its paths. The leaf is treated as double black, and the extra
+     * black is moved up the tree until it can be absorbed by a red node, or
+     * resolved by rotating it over to the leaf's sibling.
+     * @param node is the black leaf that is about to be removed
+     */
+    protected void enforceRBTreePropertiesBeforeRemove(RBTNode<T> node) {
+        RBTNode<T> doubleBlack = node;
+        while (doubleBlack != root && doubleBlack.isBlack) {
+            RBTNode<T> parent = doubleBlack.getUp();
+            boolean isLeftChild = !doubleBlack.isRightChild();
+            // the sibling exists, since its side holds at least one black node
+            RBTNode<T> sibling = isLeftChild ? parent.getDownRight() : parent.getDownLeft();
+
+            // Case 1: Red Sibling, rotate it up to get a black sibling
+            if (!sibling.isBlack) {
+                sibling.isBlack = true;
+                parent.isBlack = false;
+                rotate(sibling, parent);
+                sibling = isLeftChild ? parent.getDownRight() : parent.getDownLeft();
+            }
+
+            RBTNode<T> nearNephew = isLeftChild ? sibling.getDownLeft() : sibling.getDownRight();
+            RBTNode<T> farNephew = isLeftChild ? sibling.getDownRight() : sibling.getDownLeft();
+
+            // Case 2: Black Sibling with black children, push the extra black up
+            if (isBlack(nearNephew) && isBlack(farNephew)) {
+                sibling.isBlack = false;
+                doubleBlack = parent; // Recurring case (ends here when parent is red)
+                continue;
             }
-            // Other Case: No aunt and Parent is right child
-            if (!parentIsLeftChild && aunt == null) { // New Node is left child
-                if (newNode == newNode.getUp().getDownLeft()) {
-                    rotate(newNode, newNode.getUp());
-                    rotate(newNode, newNode.getUp());
-                    newNode.getDownLeft().isBlack = false;
-                    newNode.isBlack = true;
-                }
-                else if (newNode == newNode.getUp().getDownRight()) { // New Node is right child
-                    newNode = newNode.getUp();
-                    rotate(newNode, newNode.getUp());
-                    newNode.getDownLeft().isBlack = false;
-                    newNode.isBlack = true;
-                }
+
+            // Case 3: Black Sibling with red near child, rotate it to the far side
+            if (isBlack(farNephew)) {
+                nearNephew.isBlack = true;
+                sibling.isBlack = false;
+                rotate(nearNephew, sibling);
+                farNephew = sibling;
+                sibling = nearNephew;
             }
+
+            // Case 4: Black Sibling with red far child, rotate the sibling up
+            sibling.isBlack = parent.isBlack;
+            parent.isBlack = true;
+            farNephew.isBlack = true;
+            rotate(sibling, parent);
+            return;
         }
+        doubleBlack.isBlack = true;
+    }
+
+    /**
+     * @return true when node is black, or null (leaves count as black)
+     */
+    private static boolean isBlack(RBTNode<?> node) {
+        return node == null || node.isBlack;
+    }
+
+    /**
+     * Counts the values that are smaller than key, which is also the index that
+     * key would have among the sorted values of this tree.
+     * @param key is compared to the values of this tree
+     * @return the number of values v for which key.compareTo(v) is positive
+     */
+    public int rank(Comparable<T> key) {
+        return countBefore(key, false);
+    }
+
+    /**
+     * Finds the value at a position of the sorted values of this tree.
+     * @param index is the position, 0 for the smallest value
+     * @return the value at index
+     * @throws IndexOutOfBoundsException when index is not within [0, size())
+     */
+    public T select(int index) throws IndexOutOfBoundsException {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        Node<T> current = root;
+        while (true) {
+            int leftSize = subtreeSize(current.down[0]);
+            if (index < leftSize) {
+                current = current.down[0];
+            } else if (index == leftSize) {
+                return current.data;
+            } else {
+                index -= leftSize + 1;
+                current = current.down[1];
+            }
+        }
+    }
+
+    /**
+     * Counts the values between lowerBound and upperBound, with the same bound
+     * semantics as IterableSortedCollection.rangeIterator(), in O(log n).
+     * @param lowerBound is the lower end of the range, null for no lower end
+     * @param lowerInclusive is true when values equal to lowerBound are counted
+     * @param upperBound is the upper end of the range, null for no upper end
+     * @param upperInclusive is true when values equal to upperBound are counted
+     * @return the number of values within the range
+     */
+    public int countInRange(Comparable<T> lowerBound, boolean lowerInclusive,
+                            Comparable<T> upperBound, boolean upperInclusive) {
+        int below = lowerBound == null ? 0 : countBefore(lowerBound, !lowerInclusive);
+        int notAbove = upperBound == null ? size : countBefore(upperBound, upperInclusive);
+        return Math.max(0, notAbove - below);
+    }
+
+    /**
+     * Counts the values v for which bound.compareTo(v) is positive, and also
+     * those for which it is zero when includeEqual is true. Since the values
+     * are sorted, these are always the first values of the tree.
+     * @param bound is compared to the values of this tree
+     * @param includeEqual is true when values equal to bound are counted
+     * @return the number of values ordered before bound
+     */
+    private int countBefore(Comparable<T> bound, boolean includeEqual) {
+        int count = 0;
+        Node<T> current = root;
+        while (current != null) {
+            int compare = bound.compareTo(current.data);
+            if (compare > 0 || (compare == 0 && includeEqual)) {
+                // current and its left subtree are all before bound
+                count += subtreeSize(current.down[0]) + 1;
+                current = current.down[1];
+            } else {
+                current = current.down[0];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks that this tree is a valid red-black tree: values are in order,
+     * up references match down references, the root is black, no red node has
+     * a red child, every path from the root to a leaf passes through the
+     * same number of black nodes, and every subtree size is correct.
+     * @return the black height of the tree (0 when the tree is empty)
+     * @throws IllegalStateException describing the first violation found
+     */
+    public int validateRBTree() throws IllegalStateException {
+        if (root == null) {
+            return 0;
+        }
+        if (root.up != null) {
+            throw new IllegalStateException("Root " + root.data + " has a parent");
+        }
+        if (!((RBTNode<T>) root).isBlack) {
+            throw new IllegalStateException("Root " + root.data + " is red");
+        }
+        return validateRBTreeHelper((RBTNode<T>) root);
+    }
+
+    /**
+     * @return the number of black nodes on every path from node down to a leaf
+     */
+    private int validateRBTreeHelper(RBTNode<T> node) {
+        if (node == null) {
+            return 0;
+        }
+        for (int i = 0; i < 2; i++) {
+            RBTNode<T> child = (RBTNode<T>) node.down[i];
+            if (child == null) {
+                continue;
+            }
+            if (child.up != node) {
+                throw new IllegalStateException("Child " + child.data + " does not point up to " + node.data);
+            }
+            int compare = child.data.compareTo(node.data);
+            if (i == 0 ? compare > 0 : compare < 0) {
+                throw new IllegalStateException("Child " + child.data + " is out of order below " + node.data);
+            }
+            if (!node.isBlack && !child.isBlack) {
+                throw new IllegalStateException("Red node " + node.data + " has red child " + child.data);
+            }
+        }
+        if (node.subtreeSize != 1 + subtreeSize(node.down[0]) + subtreeSize(node.down[1])) {
+            throw new IllegalStateException("Node " + node.data + " has wrong subtree size " + node.subtreeSize);
+        }
+        int left = validateRBTreeHelper(node.getDownLeft());
+        int right = validateRBTreeHelper(node.getDownRight());
+        if (left != right) {
+            throw new IllegalStateException("Paths below " + node.data + " have black heights "
+                    + left + " and " + right);
+        }
+        return left + (node.isBlack ? 1 : 0);
     }
 
     /**
@@ -111,9 +354,10 @@ public class RedBlackTree<T extends Comparable<T>> extends BinarySearchTree<T>{
      */
     @Override
     public boolean insert(T data) {
-        RBTNode<T> newNode = new RBTNode<>(data);
+        RBTNode<T> newNode = createNode(data);
 
         if (insertHelper(newNode)) {
+            updateAugmentedFieldsToRoot(newNode.up);
             enforceRBTreePropertiesAfterInsert(newNode);
 
             if (((RBTNode<T>)root).isBlack == false) {
@@ -246,4 +490,89 @@ public class RedBlackTree<T extends Comparable<T>> extends BinarySearchTree<T>{
         assertFalse(grandchildThree.isBlack, "grandchildThree should be red");
         assertEquals(Integer.valueOf(9), grandchildThree.data, "grandchildThree should be 9");
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests if inserting many values in random and in ascending order keeps every red-black
+     * property, and keeps the height within the 2 * log2(n + 1) bound of a red-black tree
+     */
+    @Test
+    public void testCaseFour() {
+        Random random = new Random(400);
+        RedBlackTree<Integer> randomTree = new RedBlackTree<>();
+        RedBlackTree<Integer> sortedTree = new RedBlackTree<>();
+        for (int i = 0; i < 1000; i++) {
+            randomTree.insert(random.nextInt(500));
+            sortedTree.insert(i);
+            // Checking properties after every insert, throws when one does not hold
+            randomTree.validateRBTree();
+            sortedTree.validateRBTree();
+        }
+
+        // Checking that ascending inserts did not degenerate into a list
+        double bound = 2 * Math.log(1001) / Math.log(2);
+        assertTrue(randomTree.height() <= bound, "Random tree too tall: " + randomTree.height());
+        assertTrue(sortedTree.height() <= bound, "Sorted tree too tall: " + sortedTree.height());
+    }
+
+    /**
+     * Tests if rank, select and countInRange match a count over the sorted values, with
+     * subtree sizes kept correct by the rotations of many inserts
+     */
+    @Test
+    public void testOrderStatistics() {
+        Random random = new Random(400);
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        int[] counts = new int[100]; // 1 for each value in the tree (duplicates are rejected)
+        for (int i = 0; i < 300; i++) {
+            int value = random.nextInt(100);
+            if (tree.insert(value)) {
+                counts[value]++;
+            }
+        }
+        tree.validateRBTree(); // also checks every subtree size
+
+        int smaller = 0;
+        for (int value = 0; value < 100; value++) {
+            // Checking rank against the number of smaller values inserted
+            assertEquals(smaller, tree.rank(value), "Wrong rank for " + value);
+            if (counts[value] > 0) {
+                assertEquals(Integer.valueOf(value), tree.select(smaller), "Wrong value at " + smaller);
+            }
+            smaller += counts[value];
+        }
+
+        // Checking counts with inclusive and exclusive bounds
+        assertEquals(counts[10] + counts[11] + counts[12], tree.countInRange(10, true, 12, true));
+        assertEquals(counts[11], tree.countInRange(10, false, 12, false));
+        assertEquals(tree.size(), tree.countInRange(null, true, null, true));
+        assertEquals(0, tree.countInRange(60, true, 40, true));
+        assertThrows(IndexOutOfBoundsException.class, () -> tree.select(tree.size()));
+    }
+
+    /**
+     * Tests if removing values in random order keeps every red-black property and subtree
+     * size correct, until the tree is empty
+     */
+    @Test
+    public void testRemove() {
+        Random random = new Random(400);
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            tree.insert(i);
+            values.add(i);
+        }
+        Collections.shuffle(values, random);
+
+        // Missing values cannot be removed
+        assertFalse(tree.remove(-1));
+        for (int i = 0; i < values.size(); i++) {
+            assertTrue(tree.remove(values.get(i)), "Could not remove " + values.get(i));
+            assertFalse(tree.contains(values.get(i)), values.get(i) + " still in tree");
+            // Checking properties after every remove, throws when one does not hold
+            tree.validateRBTree();
+            assertEquals(values.size() - i - 1, tree.size());
+        }
+        assertTrue(tree.isEmpty());
+    }
+}
@@ -0,0 +1,435 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compressed set of non-negative ints in the Roaring format. Values are split
+ * by their high 16 bits into containers of up to 65536 values. A container
+ * with at most 4096 values is a sorted array of their low 16 bits, a fuller
+ * container is a bitmap of 1024 longs. Sparse sets so cost about 2 bytes per
+ * value, dense sets 1 bit per possible value, and intersections and unions
+ * work a container (and within bitmaps, 64 values) at a time.
+ */
+public class RoaringBitmap {
+
+    // the most values an array container holds before it becomes a bitmap
+    private static final int ARRAY_LIMIT = 4096;
+
+    /**
+     * The values that share one high 16 bits, stored as their low 16 bits
+     * either in a sorted array or in a bitmap.
+     */
+    private static final class Container {
+        private char[] array; // sorted low bits, null when this is a bitmap
+        private long[] bitmap; // 65536 bits, null when this is an array
+        private int cardinality;
+
+        private static Container ofArray(char[] array, int cardinality) {
+            Container container = new Container();
+            container.array = array;
+            container.cardinality = cardinality;
+            return container;
+        }
+
+        private static Container ofBitmap(long[] bitmap, int cardinality) {
+            Container container = new Container();
+            container.bitmap = bitmap;
+            container.cardinality = cardinality;
+            return container;
+        }
+
+        private boolean contains(char low) {
+            if (bitmap != null) {
+                return (bitmap[low >>> 6] & (1L << low)) != 0;
+            }
+            return Arrays.binarySearch(array, 0, cardinality, low) >= 0;
+        }
+
+        private void add(char low) {
+            if (bitmap != null) {
+                long before = bitmap[low >>> 6];
+                bitmap[low >>> 6] |= 1L << low;
+                if (before != bitmap[low >>> 6]) {
+                    cardinality++;
+                }
+                return;
+            }
+            int index = cardinality > 0 && array[cardinality - 1] < low ? -cardinality - 1
+                    : Arrays.binarySearch(array, 0, cardinality, low);
+            if (index >= 0) {
+                return; // already present
+            }
+            index = -index - 1;
+            if (cardinality == ARRAY_LIMIT) {
+                bitmap = toBitmap();
+                array = null;
+                add(low);
+                return;
+            }
+            if (cardinality == array.length) {
+                array = Arrays.copyOf(array, Math.min(ARRAY_LIMIT, array.length * 2));
+            }
+            System.arraycopy(array, index, array, index + 1, cardinality - index);
+            array[index] = low;
+            cardinality++;
+        }
+
+        private long[] toBitmap() {
+            if (bitmap != null) {
+                return bitmap.clone();
+            }
+            long[] words = new long[1024];
+            for (int i = 0; i < cardinality; i++) {
+                words[array[i] >>> 6] |= 1L << array[i];
+            }
+            return words;
+        }
+
+        /**
+         * @return a container of the values set in words, as an array
+         *     container when there are few enough of them
+         */
+        private static Container fromBitmap(long[] words) {
+            int cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            if (cardinality > ARRAY_LIMIT) {
+                return ofBitmap(words, cardinality);
+            }
+            char[] values = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < words.length; i++) {
+                for (long word = words[i]; word != 0; word &= word - 1) {
+                    values[count++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+                }
+            }
+            return ofArray(values, count);
+        }
+
+        private Container and(Container other) {
+            if (bitmap != null && other.bitmap != null) {
+                long[] words = new long[1024];
+                for (int i = 0; i < 1024; i++) {
+                    words[i] = bitmap[i] & other.bitmap[i];
+                }
+                return fromBitmap(words);
+            }
+            // At least one side is an array, so the result is an array
+            Container small = bitmap == null ? this : other;
+            Container large = small == this ? other : this;
+            char[] values = new char[small.cardinality];
+            int count = 0;
+            if (large.bitmap != null) {
+                for (int i = 0; i < small.cardinality; i++) {
+                    if (large.contains(small.array[i])) {
+                        values[count++] = small.array[i];
+                    }
+                }
+            } else {
+                int j = 0;
+                for (int i = 0; i < small.cardinality && j < large.cardinality; ) {
+                    if (small.array[i] < large.array[j]) {
+                        i++;
+                    } else if (small.array[i] > large.array[j]) {
+                        j++;
+                    } else {
+                        values[count++] = small.array[i];
+                        i++;
+                        j++;
+                    }
+                }
+            }
+            return ofArray(values, count);
+        }
+
+        private Container or(Container other) {
+            if (bitmap == null && other.bitmap == null
+                    && cardinality + other.cardinality <= ARRAY_LIMIT) {
+                char[] values = new char[cardinality + other.cardinality];
+                int count = 0;
+                int i = 0;
+                int j = 0;
+                while (i < cardinality || j < other.cardinality) {
+                    if (j == other.cardinality || (i < cardinality && array[i] < other.array[j])) {
+                        values[count++] = array[i++];
+                    } else if (i == cardinality || other.array[j] < array[i]) {
+                        values[count++] = other.array[j++];
+                    } else {
+                        values[count++] = array[i++];
+                        j++;
+                    }
+                }
+                return ofArray(values, count);
+            }
+            long[] words = toBitmap();
+            if (other.bitmap != null) {
+                for (int i = 0; i < 1024; i++) {
+                    words[i] |= other.bitmap[i];
+                }
+            } else {
+                for (int i = 0; i < other.cardinality; i++) {
+                    words[other.array[i] >>> 6] |= 1L << other.array[i];
+                }
+            }
+            return fromBitmap(words);
+        }
+    }
+
+    private char[] keys = new char[4]; // sorted high 16 bits of the containers
+    private Container[] containers = new Container[4];
+    private int containerCount = 0;
+
+    /**
+     * Adds value to this set. Adding values in increasing order is fastest.
+     * @param value is the value to add
+     * @throws IllegalArgumentException when value is negative
+     */
+    public void add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Values cannot be negative: " + value);
+        }
+        char high = (char) (value >>> 16);
+        int index = containerCount > 0 && keys[containerCount - 1] == high ? containerCount - 1
+                : Arrays.binarySearch(keys, 0, containerCount, high);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, high, Container.ofArray(new char[4], 0));
+        }
+        containers[index].add((char) value);
+    }
+
+    private void insertContainer(int index, char high, Container container) {
+        if (containerCount == keys.length) {
+            keys = Arrays.copyOf(keys, containerCount * 2);
+            containers = Arrays.copyOf(containers, containerCount * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, containerCount - index);
+        System.arraycopy(containers, index, containers, index + 1, containerCount - index);
+        keys[index] = high;
+        containers[index] = container;
+        containerCount++;
+    }
+
+    private void appendContainer(char high, Container container) {
+        if (container.cardinality > 0) {
+            insertContainer(containerCount, high, container);
+        }
+    }
+
+    public boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int index = Arrays.binarySearch(keys, 0, containerCount, (char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    /**
+     * @return the number of values in this set
+     */
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < containerCount; i++) {
+            cardinality += containers[i].cardinality;
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return containerCount == 0;
+    }
+
+    /**
+     * @return a new set of the values that are in both this set and other
+     */
+    public RoaringBitmap and(RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < containerCount && j < other.containerCount) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.appendContainer(keys[i], containers[i].and(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a new set of the values that are in this set, other, or both
+     */
+    public RoaringBitmap or(RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < containerCount || j < other.containerCount) {
+            if (j == other.containerCount || (i < containerCount && keys[i] < other.keys[j])) {
+                result.appendContainer(keys[i], copy(containers[i]));
+                i++;
+            } else if (i == containerCount || other.keys[j] < keys[i]) {
+                result.appendContainer(other.keys[j], copy(other.containers[j]));
+                j++;
+            } else {
+                result.appendContainer(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Unites any number of sets in one pass. The values of each container are
+     * set in one accumulator of 1024 words per high 16 bits, so this does not
+     * copy a growing result for every set the way repeated or() calls would.
+     * @param bitmaps are the sets to unite
+     * @return a new set of the values that are in any of bitmaps
+     */
+    public static RoaringBitmap union(Iterable<RoaringBitmap> bitmaps) {
+        TreeMap<Character, long[]> accumulators = new TreeMap<>();
+        for (RoaringBitmap bitmap : bitmaps) {
+            for (int i = 0; i < bitmap.containerCount; i++) {
+                long[] words = accumulators.computeIfAbsent(bitmap.keys[i], key -> new long[1024]);
+                Container container = bitmap.containers[i];
+                if (container.bitmap != null) {
+                    for (int w = 0; w < 1024; w++) {
+                        words[w] |= container.bitmap[w];
+                    }
+                } else {
+                    for (int v = 0; v < container.cardinality; v++) {
+                        words[container.array[v] >>> 6] |= 1L << container.array[v];
+                    }
+                }
+            }
+        }
+        RoaringBitmap result = new RoaringBitmap();
+        for (Map.Entry<Character, long[]> entry : accumulators.entrySet()) {
+            result.appendContainer(entry.getKey(), Container.fromBitmap(entry.getValue()));
+        }
+        return result;
+    }
+
+    private static Container copy(Container container) {
+        return container.bitmap != null ? Container.ofBitmap(container.bitmap.clone(), container.cardinality)
+                : Container.ofArray(Arrays.copyOf(container.array, container.cardinality), container.cardinality);
+    }
+
+    /**
+     * @return an iterator over the values of this set in increasing order
+     */
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int containerIndex = 0;
+            private int position = 0; // array index, or bit index within a bitmap
+            private int next = advance();
+
+            /**
+             * Finds the next value at or after the current position.
+             * @return the value, or -1 when there are no more values
+             */
+            private int advance() {
+                while (containerIndex < containerCount) {
+                    Container container = containers[containerIndex];
+                    int high = keys[containerIndex] << 16;
+                    if (container.bitmap == null) {
+                        if (position < container.cardinality) {
+                            return high | container.array[position++];
+                        }
+                    } else {
+                        while (position < 65536) {
+                            long word = container.bitmap[position >>> 6] & (-1L << position);
+                            if (word != 0) {
+                                int low = (position & ~63) + Long.numberOfTrailingZeros(word);
+                                position = low + 1;
+                                return high | low;
+                            }
+                            position = (position & ~63) + 64;
+                        }
+                    }
+                    containerIndex++;
+                    position = 0;
+                }
+                return -1;
+            }
+
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            public int nextInt() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                int value = next;
+                next = advance();
+                return value;
+            }
+        };
+    }
+
+    /**
+     * Tests if adding, intersecting and uniting sparse and dense sets gives the same
+     * values as java.util.BitSet
+     */
+    @Test
+    public void testMatchesBitSet() {
+        Random random = new Random(400);
+        // sparse, dense and mixed sets that span several containers
+        int[][] shapes = {{200000, 300}, {140000, 100000}, {70000, 5000}};
+        RoaringBitmap[] bitmaps = new RoaringBitmap[shapes.length];
+        BitSet[] expected = new BitSet[shapes.length];
+        for (int s = 0; s < shapes.length; s++) {
+            bitmaps[s] = new RoaringBitmap();
+            expected[s] = new BitSet();
+            for (int i = 0; i < shapes[s][1]; i++) {
+                int value = random.nextInt(shapes[s][0]);
+                bitmaps[s].add(value);
+                expected[s].set(value);
+            }
+            assertEquals(expected[s].cardinality(), bitmaps[s].cardinality());
+        }
+        for (int a = 0; a < shapes.length; a++) {
+            for (int b = 0; b < shapes.length; b++) {
+                BitSet and = (BitSet) expected[a].clone();
+                and.and(expected[b]);
+                assertBitmapEquals(and, bitmaps[a].and(bitmaps[b]));
+                BitSet or = (BitSet) expected[a].clone();
+                or.or(expected[b]);
+                assertBitmapEquals(or, bitmaps[a].or(bitmaps[b]));
+            }
+        }
+        BitSet all = new BitSet();
+        for (BitSet set : expected) {
+            all.or(set);
+        }
+        assertBitmapEquals(all, union(List.of(bitmaps)));
+        assertTrue(union(List.of()).isEmpty());
+        assertTrue(bitmaps[0].contains(expected[0].nextSetBit(0)));
+        assertFalse(bitmaps[0].contains(expected[0].nextClearBit(0)));
+        assertTrue(new RoaringBitmap().isEmpty());
+    }
+
+    private static void assertBitmapEquals(BitSet expected, RoaringBitmap actual) {
+        assertEquals(expected.cardinality(), actual.cardinality());
+        PrimitiveIterator.OfInt iterator = actual.iterator();
+        for (int value = expected.nextSetBit(0); value >= 0; value = expected.nextSetBit(value + 1)) {
+            assertEquals(value, iterator.nextInt());
+        }
+        assertFalse(iterator.hasNext());
+    }
+}
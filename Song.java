@@ -77,8 +77,26 @@ public class Song implements SongInterface{
         return liveness;
     }
 
+    /**
+     * Orders songs by Speed (BPM) first, so that songs can be looked up by BPM
+     * range, and breaks ties by year, title, artist, genres and the remaining
+     * ratings. Only songs that agree on every attribute compare as equal.
+     *
+     * @param o is the song to compare this song to
+     * @return negative, zero or positive when this song is ordered before,
+     *     together with, or after o
+     */
     @Override
-    public int compareTo(SongInterface o) { //DOUBT
-        return 0;
+    public int compareTo(SongInterface o) {
+        int compare = Integer.compare(bpm, o.getBPM());
+        if (compare == 0) compare = Integer.compare(year, o.getYear());
+        if (compare == 0) compare = title.compareTo(o.getTitle());
+        if (compare == 0) compare = artist.compareTo(o.getArtist());
+        if (compare == 0) compare = genres.compareTo(o.getGenres());
+        if (compare == 0) compare = Integer.compare(energy, o.getEnergy());
+        if (compare == 0) compare = Integer.compare(danceability, o.getDanceability());
+        if (compare == 0) compare = Integer.compare(loudness, o.getLoudness());
+        if (compare == 0) compare = Integer.compare(liveness, o.getLiveness());
+        return compare;
     }
 }
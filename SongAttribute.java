@@ -0,0 +1,22 @@
+/**
+ * The numeric attributes of a song, for code that sorts, filters or indexes
+ * songs by an attribute that is chosen at runtime.
+ */
+public enum SongAttribute {
+    YEAR, BPM, ENERGY, DANCEABILITY, LOUDNESS, LIVENESS;
+
+    /**
+     * @param song is the song to read the attribute of
+     * @return this attribute of song
+     */
+    public int of(SongInterface song) {
+        switch (this) {
+            case YEAR: return song.getYear();
+            case BPM: return song.getBPM();
+            case ENERGY: return song.getEnergy();
+            case DANCEABILITY: return song.getDanceability();
+            case LOUDNESS: return song.getLoudness();
+            default: return song.getLiveness();
+        }
+    }
+}
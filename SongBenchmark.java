@@ -0,0 +1,505 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Micro benchmarks for the iSongify backend and its data structures. Each
+ * benchmark runs against a synthetic catalogue so that sizes well beyond
+ * songs.csv can be measured.
+ *
+ * Usage: java SongBenchmark [benchmark] [rows]
+ * where benchmark is one of the names listed in main (default: all).
+ */
+public class SongBenchmark {
+
+    private static final String[] GENRES = {
+        "dance pop", "pop", "canadian pop", "boy band", "barbadian pop",
+        "electropop", "detroit hip hop", "neo mellow", "big room", "art pop"
+    };
+
+    public static void main(String[] args) throws IOException {
+        String benchmark = args.length > 0 ? args[0] : "all";
+        int rows = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+        if (benchmark.equals("all") || benchmark.equals("ingest")) {
+            benchmarkIngestion(rows);
+        }
+        if (benchmark.equals("all") || benchmark.equals("parallel")) {
+            benchmarkParallelIngestion(rows);
+        }
+        if (benchmark.equals("all") || benchmark.equals("tree")) {
+            benchmarkTreeOperations(rows);
+        }
+        if (benchmark.equals("all") || benchmark.equals("iterator")) {
+            benchmarkIterators(rows);
+        }
+        if (benchmark.equals("all") || benchmark.equals("memory")) {
+            benchmarkMemory(rows);
+        }
+        if (benchmark.equals("all") || benchmark.equals("bplus")) {
+            benchmarkBPlusTree(rows);
+        }
+        if (benchmark.equals("all") || benchmark.equals("concurrent")) {
+            benchmarkConcurrentCollection(rows);
+        }
+        if (benchmark.equals("all") || benchmark.equals("kdtree")) {
+            benchmarkKDTree(rows);
+        }
+        if (benchmark.equals("all") || benchmark.equals("topk")) {
+            benchmarkTopK(rows);
+        }
+    }
+
+    /**
+     * Compares the throughput of the Scanner based loader against the
+     * memory-mapped loader used by Backend.readData(). Songs are loaded into a
+     * list backed collection so that parsing dominates the measurement.
+     */
+    public static void benchmarkIngestion(int rows) throws IOException {
+        File file = writeSyntheticCatalogue(rows, new Random(400));
+        System.out.println("== ingestion: " + rows + " rows, " + file.length() / (1024 * 1024) + " MB");
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            new Backend(new ISCPlaceholder<>()).readDataWithScanner(file.getPath());
+            long scannerNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            new Backend(new ISCPlaceholder<>()).readData(file.getPath());
+            long mappedNanos = System.nanoTime() - start;
+
+            System.out.println("round " + round
+                    + ": scanner " + rate(rows, scannerNanos)
+                    + ", mapped " + rate(rows, mappedNanos)
+                    + String.format(" (%.1fx)", (double) scannerNanos / mappedNanos));
+        }
+    }
+
+    /**
+     * Measures how parsing the memory-mapped file scales with the number of
+     * fork/join worker threads, up to the number of available processors.
+     */
+    public static void benchmarkParallelIngestion(int rows) throws IOException {
+        File file = writeSyntheticCatalogue(rows, new Random(400));
+        MappedSongReader reader = new MappedSongReader(file.getPath());
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.out.println("== parallel ingestion: " + rows + " rows, " + processors + " processors");
+
+        reader.readSongs(); // warm up
+        long start = System.nanoTime();
+        reader.readSongs();
+        long serialNanos = System.nanoTime() - start;
+        System.out.println("serial: " + rate(rows, serialNanos));
+
+        for (int threads = 1; threads <= processors; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            reader.readSongsParallel(pool); // warm up
+            start = System.nanoTime();
+            reader.readSongsParallel(pool);
+            long nanos = System.nanoTime() - start;
+            pool.shutdown();
+            System.out.println(threads + " threads: " + rate(rows, nanos)
+                    + String.format(" (%.1fx)", (double) serialNanos / nanos));
+        }
+    }
+
+    /**
+     * Measures insert and lookup cost of IterableRedBlackTree at doubling sizes
+     * up to rows values. With a balanced tree the height stays within
+     * 2 * log2(n + 1) and the cost per operation grows with log n, not n.
+     * Keys are random integers so that only the tree itself is measured.
+     */
+    public static void benchmarkTreeOperations(int rows) {
+        System.out.println("== red-black tree: insert and lookup");
+        Random random = new Random(400);
+        for (int n = Math.max(1, rows / 8); n <= rows; n *= 2) {
+            int[] keys = new int[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = random.nextInt();
+            }
+
+            IterableRedBlackTree<Integer> tree = new IterableRedBlackTree<>();
+            long start = System.nanoTime();
+            for (int key : keys) {
+                tree.insert(key);
+            }
+            long insertNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int found = 0;
+            for (int key : keys) {
+                if (tree.contains(key)) {
+                    found++;
+                }
+            }
+            long lookupNanos = System.nanoTime() - start;
+
+            int blackHeight = tree.validateRBTree();
+            System.out.println(String.format(
+                    "n=%,d: insert %.0f ns/op, lookup %.0f ns/op, height %d (bound %.0f), black height %d, found %d",
+                    n, (double) insertNanos / n, (double) lookupNanos / n, tree.height(),
+                    2 * Math.log(n + 1) / Math.log(2), blackHeight, found));
+        }
+    }
+
+    /**
+     * Compares the stack based iterator of IterableRedBlackTree against the
+     * stackless iterator, for full scans and for many narrow range scans.
+     * A 10M node tree needs roughly -Xmx2g.
+     */
+    public static void benchmarkIterators(int rows) {
+        System.out.println("== iterators: " + rows + " nodes");
+        List<Integer> values = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            values.add(i);
+        }
+        IterableRedBlackTree<Integer> tree = new IterableRedBlackTree<>();
+        tree.insertAll(values);
+        values = null;
+
+        Random random = new Random(400);
+        for (int round = 0; round < 3; round++) {
+            for (boolean stackless : new boolean[] {false, true}) {
+                tree.setStacklessIteration(stackless);
+
+                long start = System.nanoTime();
+                long sum = 0;
+                for (Integer value : tree) {
+                    sum += value;
+                }
+                long scanNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < 100_000; i++) {
+                    int low = random.nextInt(rows);
+                    Iterator<Integer> range = tree.rangeIterator(low, true, low + 20, true);
+                    while (range.hasNext()) {
+                        sum += range.next();
+                    }
+                }
+                long rangeNanos = System.nanoTime() - start;
+
+                System.out.println(String.format("round %d %-9s: full scan %.1f ns/value, 100k ranges of 21 %.0f ns/range (%d)",
+                        round, stackless ? "stackless" : "stack", (double) scanNanos / rows,
+                        rangeNanos / 100_000.0, sum % 10));
+            }
+        }
+    }
+
+    /**
+     * Reports the heap used per element by IterableRedBlackTree and
+     * ArrayRedBlackTree, and compares their full scan speed. The values are
+     * shared by both trees and allocated before measuring, so only the nodes
+     * are counted. Heap use is read after a gc and is approximate; run with a
+     * fixed -Xms/-Xmx for steadier numbers.
+     */
+    public static void benchmarkMemory(int rows) {
+        System.out.println("== memory: " + rows + " values");
+        List<Integer> values = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            values.add(i);
+        }
+
+        long before = usedHeap();
+        IterableRedBlackTree<Integer> objectTree = new IterableRedBlackTree<>();
+        for (Integer value : values) {
+            objectTree.insert(value);
+        }
+        long objectBytes = usedHeap() - before;
+        long objectScan = timeFullScan(objectTree);
+        objectTree = null;
+
+        before = usedHeap();
+        ArrayRedBlackTree<Integer> arrayTree = new ArrayRedBlackTree<>();
+        for (Integer value : values) {
+            arrayTree.insert(value);
+        }
+        long arrayBytes = usedHeap() - before;
+        long arrayScan = timeFullScan(arrayTree);
+
+        System.out.println(String.format("IterableRedBlackTree: %.1f bytes/value, full scan %.1f ns/value",
+                (double) objectBytes / rows, (double) objectScan / rows));
+        System.out.println(String.format("ArrayRedBlackTree:    %.1f bytes/value, full scan %.1f ns/value",
+                (double) arrayBytes / rows, (double) arrayScan / rows));
+    }
+
+    /**
+     * Compares lookups, narrow range scans and full scans of BPlusTree against
+     * the red-black trees, on a catalogue of rows synthetic songs so that every
+     * comparison goes through Song.compareTo().
+     */
+    public static void benchmarkBPlusTree(int rows) throws IOException {
+        File file = writeSyntheticCatalogue(rows, new Random(400));
+        List<SongInterface> songs = new MappedSongReader(file.getPath()).readSongs();
+        System.out.println("== b+tree: " + rows + " songs");
+
+        List<IterableSortedCollection<SongInterface>> trees = List.of(
+                new IterableRedBlackTree<>(), new ArrayRedBlackTree<>(), new BPlusTree<>());
+        for (IterableSortedCollection<SongInterface> tree : trees) {
+            for (SongInterface song : songs) {
+                tree.insert(song);
+            }
+        }
+
+        Random random = new Random(400);
+        for (int round = 0; round < 3; round++) {
+            for (IterableSortedCollection<SongInterface> tree : trees) {
+                long start = System.nanoTime();
+                int found = 0;
+                for (int i = 0; i < 1_000_000; i++) {
+                    if (tree.contains(songs.get(random.nextInt(rows)))) {
+                        found++;
+                    }
+                }
+                long lookupNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                long sum = 0;
+                for (int i = 0; i < 100_000; i++) {
+                    int bpm = 60 + random.nextInt(140);
+                    Iterator<SongInterface> range = tree.rangeIterator(
+                            song -> bpm > song.getBPM() ? 1 : -1, true, song -> bpm < song.getBPM() ? -1 : 1, true);
+                    for (int j = 0; j < 20 && range.hasNext(); j++) {
+                        sum += range.next().getYear();
+                    }
+                }
+                long rangeNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (SongInterface song : tree) {
+                    sum += song.getYear();
+                }
+                long scanNanos = System.nanoTime() - start;
+
+                System.out.println(String.format("round %d %-20s: lookup %.0f ns/song, 100k seeks of 20 %.0f ns/range, full scan %.1f ns/song (%d, %d)",
+                        round, tree.getClass().getSimpleName(), lookupNanos / 1e6, rangeNanos / 100_000.0,
+                        (double) scanNanos / rows, found, sum % 10));
+            }
+        }
+    }
+
+    /**
+     * Measures the throughput of a mixed workload (half inserts, half range
+     * scans of about 10 values) as the number of threads grows, for
+     * ConcurrentSortedCollection and for IterableRedBlackTree behind one
+     * global lock. Each run starts from a collection of rows values.
+     */
+    public static void benchmarkConcurrentCollection(int rows) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int operations = 1_000_000;
+        System.out.println("== concurrent: " + operations + " operations on " + rows + " values, "
+                + processors + " processors");
+        List<Integer> values = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            values.add(i * 10);
+        }
+
+        for (int threads = 1; threads <= Math.max(4, 2 * processors); threads *= 2) {
+            for (boolean concurrent : new boolean[] {false, true}) {
+                IterableSortedCollection<Integer> collection = concurrent
+                        ? new ConcurrentSortedCollection<>() : new IterableRedBlackTree<>();
+                collection.insertAll(values);
+                Object lock = new Object();
+                int perThread = operations / threads;
+
+                Thread[] workers = new Thread[threads];
+                for (int t = 0; t < threads; t++) {
+                    Random random = new Random(400 + t);
+                    workers[t] = new Thread(() -> {
+                        long sum = 0;
+                        for (int i = 0; i < perThread; i++) {
+                            int key = random.nextInt(rows * 10);
+                            if (concurrent) {
+                                sum += mixedOperation(collection, key, i);
+                            } else {
+                                synchronized (lock) {
+                                    sum += mixedOperation(collection, key, i);
+                                }
+                            }
+                        }
+                        if (sum == 42) {
+                            System.out.println(); // keeps the work from being optimized away
+                        }
+                    });
+                }
+                long start = System.nanoTime();
+                for (Thread worker : workers) {
+                    worker.start();
+                }
+                for (Thread worker : workers) {
+                    try {
+                        worker.join();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                long nanos = System.nanoTime() - start;
+                System.out.println(String.format("%d threads %-28s: %.2f M ops/s", threads,
+                        concurrent ? "ConcurrentSortedCollection" : "IterableRedBlackTree + lock",
+                        perThread * threads / (nanos / 1e3)));
+            }
+        }
+    }
+
+    /**
+     * Compares box queries ("BPM 110-130, energy above 80, danceability above
+     * 70") and ten-nearest-neighbour lookups on KDTree against checking every
+     * song, on a catalogue of rows synthetic songs.
+     */
+    public static void benchmarkKDTree(int rows) throws IOException {
+        File file = writeSyntheticCatalogue(rows, new Random(400));
+        List<SongInterface> songs = new MappedSongReader(file.getPath()).readSongs();
+        System.out.println("== kdtree: " + rows + " songs");
+
+        long start = System.nanoTime();
+        KDTree kdTree = new KDTree(songs);
+        System.out.println("build: " + rate(rows, System.nanoTime() - start));
+
+        Random random = new Random(400);
+        int queries = 1000;
+        for (int round = 0; round < 3; round++) {
+            long found = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                int bpm = 60 + random.nextInt(120);
+                found += kdTree.rangeQuery(
+                        new int[] {bpm, 81, 71, Integer.MIN_VALUE, Integer.MIN_VALUE},
+                        new int[] {bpm + 20, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE})
+                        .size();
+            }
+            long boxNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                int bpm = 60 + random.nextInt(120);
+                for (SongInterface song : songs) {
+                    if (song.getBPM() >= bpm && song.getBPM() <= bpm + 20 && song.getEnergy() > 80
+                            && song.getDanceability() > 70) {
+                        found--;
+                    }
+                }
+            }
+            long scanNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                found += kdTree.nearest(songs.get(random.nextInt(rows)), 10).size();
+            }
+            long nearestNanos = System.nanoTime() - start;
+
+            System.out.println(String.format("round %d: box query %.1f us, full scan %.1f us, 10 nearest %.1f us (%d)",
+                    round, boxNanos / 1e3 / queries, scanNanos / 1e3 / queries, nearestNanos / 1e3 / queries,
+                    found % 10));
+        }
+    }
+
+    /**
+     * Compares fiveMostDanceable() over BPM ranges of growing width between a
+     * backend on IterableRedBlackTree, which offers every saved song to a
+     * bounded heap, and one on AugmentedSongTree, which searches best first.
+     */
+    public static void benchmarkTopK(int rows) throws IOException {
+        File file = writeSyntheticCatalogue(rows, new Random(400));
+        System.out.println("== topk: " + rows + " songs");
+        Backend heap = new Backend(new IterableRedBlackTree<>());
+        heap.readData(file.getPath());
+        Backend augmented = new Backend(new AugmentedSongTree());
+        augmented.readData(file.getPath());
+
+        for (int width : new int[] {5, 35, 140}) {
+            for (Backend backend : new Backend[] {heap, augmented}) {
+                backend.getRange(60, 60 + width - 1);
+                backend.fiveMostDanceable(); // builds the indexes
+                int queries = 100;
+                long start = System.nanoTime();
+                int found = 0;
+                for (int i = 0; i < queries; i++) {
+                    found += backend.fiveMostDanceable().size();
+                }
+                long nanos = System.nanoTime() - start;
+                System.out.println(String.format("BPM width %3d %-18s: %.1f us (%d)", width,
+                        backend == heap ? "bounded heap" : "augmented tree", nanos / 1e3 / queries, found));
+            }
+        }
+    }
+
+    private static long mixedOperation(IterableSortedCollection<Integer> collection, int key, int i) {
+        if (i % 2 == 0) {
+            collection.insert(key);
+            return 1;
+        }
+        long sum = 0;
+        Iterator<Integer> range = collection.rangeIterator(key, true, key + 100, false);
+        while (range.hasNext()) {
+            sum += range.next();
+        }
+        return sum;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * @return the nanoseconds taken by the fastest of three full scans of values
+     */
+    private static long timeFullScan(Iterable<Integer> values) {
+        long best = Long.MAX_VALUE;
+        long sum = 0;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (Integer value : values) {
+                sum += value;
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        if (sum == 42) {
+            System.out.println(); // keeps the scans from being optimized away
+        }
+        return best;
+    }
+
+    /**
+     * Writes a csv file in the format of songs.csv with randomly generated
+     * values. Every tenth title is quoted and contains a comma.
+     * @param rows is the number of songs to write
+     * @param random is the source of the generated values
+     * @return the temporary file, deleted when the JVM exits
+     */
+    public static File writeSyntheticCatalogue(int rows, Random random) throws IOException {
+        File file = File.createTempFile("songs", ".csv");
+        file.deleteOnExit();
+        try (PrintStream out = new PrintStream(new BufferedOutputStream(
+                new FileOutputStream(file), 1 << 16))) {
+            out.print("title,artist,top genre,year,bpm,nrgy,dnce,dB,live,val,dur,acous,spch,pop\r\n");
+            for (int i = 0; i < rows; i++) {
+                String title = i % 10 == 0 ? "\"Song " + i + ", Part 2\"" : "Song " + i;
+                out.print(title + ",Artist " + random.nextInt(5000) + ","
+                        + GENRES[random.nextInt(GENRES.length)] + ","
+                        + (2010 + random.nextInt(10)) + "," + (60 + random.nextInt(140)) + ","
+                        + random.nextInt(100) + "," + random.nextInt(100) + ","
+                        + (-random.nextInt(20)) + "," + random.nextInt(100) + ","
+                        + random.nextInt(100) + "," + (150 + random.nextInt(200)) + ","
+                        + random.nextInt(100) + "," + random.nextInt(50) + ","
+                        + random.nextInt(100) + "\r\n");
+            }
+        }
+        return file;
+    }
+
+    private static String rate(int rows, long nanos) {
+        return String.format("%.0f ms (%.2f M rows/s)", nanos / 1e6, rows / (nanos / 1e3));
+    }
+}
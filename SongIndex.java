@@ -0,0 +1,140 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Secondary index that keeps songs sorted by one attribute. Songs with the
+ * same attribute value are kept in their natural order, so the songs of one
+ * value come out of the index in the same order as they do from the song tree.
+ *
+ * The entries are stored in an IterableRedBlackTree, which keeps subtree
+ * sizes, so counting the songs within a range of values takes O(log n) time.
+ * This is what lets Backend compare how many songs each index would visit
+ * before it picks one.
+ */
+public class SongIndex {
+
+    /**
+     * An entry of the index: a song and its value of the indexed attribute.
+     */
+    protected static class Entry implements Comparable<Entry> {
+        public final int key;
+        public final SongInterface song;
+
+        public Entry(int key, SongInterface song) {
+            this.key = key;
+            this.song = song;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (key != other.key) {
+                return Integer.compare(key, other.key);
+            }
+            return song.compareTo(other.song);
+        }
+    }
+
+    private final SongAttribute attribute;
+    private final IterableRedBlackTree<Entry> entries = new IterableRedBlackTree<>();
+
+    /**
+     * Creates an empty index.
+     * @param attribute is the attribute that songs are sorted by
+     */
+    public SongIndex(SongAttribute attribute) {
+        this.attribute = attribute;
+    }
+
+    /**
+     * @return the attribute that songs are sorted by
+     */
+    public SongAttribute getAttribute() {
+        return attribute;
+    }
+
+    /**
+     * Adds a song to the index.
+     * @param song is the song to add
+     */
+    public void insert(SongInterface song) {
+        entries.insert(new Entry(attribute.of(song), song));
+    }
+
+    /**
+     * Adds every song of songs to the index in one bulk insert.
+     * @param songs are the songs to add
+     */
+    public void insertAll(Collection<? extends SongInterface> songs) {
+        Entry[] batch = new Entry[songs.size()];
+        int i = 0;
+        for (SongInterface song : songs) {
+            batch[i++] = new Entry(attribute.of(song), song);
+        }
+        entries.insertAll(Arrays.asList(batch));
+    }
+
+    /**
+     * Removes one song that is equal to song from the index.
+     * @param song is the song to remove
+     * @return true if a song was removed, false if it was not in the index
+     */
+    public boolean remove(SongInterface song) {
+        return entries.remove(new Entry(attribute.of(song), song));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Counts the songs whose attribute is between low and high, in O(log n) time.
+     * @param low is the smallest attribute value counted
+     * @param high is the largest attribute value counted
+     * @return the number of songs within the range
+     */
+    public int count(int low, int high) {
+        return entries.countInRange(keyAtLeast(low), true, keyAtMost(high), true);
+    }
+
+    /**
+     * Returns the songs whose attribute is between low and high, sorted by the
+     * attribute and then by their natural order.
+     * @param low is the smallest attribute value included
+     * @param high is the largest attribute value included
+     * @return an iterator over the songs within the range
+     */
+    public Iterator<SongInterface> iterator(int low, int high) {
+        return songs(entries.rangeIterator(keyAtLeast(low), true, keyAtMost(high), true));
+    }
+
+    private static Iterator<SongInterface> songs(Iterator<Entry> iterator) {
+        return new Iterator<SongInterface>() {
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            public SongInterface next() {
+                return iterator.next().song;
+            }
+        };
+    }
+
+    /**
+     * @return a lower range bound that is below every entry with a key of at least key
+     */
+    private static Comparable<Entry> keyAtLeast(int key) {
+        return entry -> key > entry.key ? 1 : -1;
+    }
+
+    /**
+     * @return an upper range bound that is above every entry with a key of at most key
+     */
+    private static Comparable<Entry> keyAtMost(int key) {
+        return entry -> key < entry.key ? -1 : 1;
+    }
+}
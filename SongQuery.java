@@ -0,0 +1,265 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A declarative query over the loaded songs, answered by Backend.query(): a
+ * range of values for any attributes, genre words, an order, a page given by
+ * an offset and a limit, and the attribute values to show with each title.
+ * The setters return the query itself so that they can be chained:
+ *
+ * <pre>
+ * new SongQuery().where(SongAttribute.BPM, 90, 130).whereGenre("pop")
+ *         .orderBy(SongAttribute.ENERGY, false).limit(10).select(SongAttribute.ENERGY)
+ * </pre>
+ *
+ * Unlike getRange() and filterOldSongs(), a query does not depend on or
+ * change any state saved in the backend.
+ */
+public class SongQuery {
+
+    private static final SongAttribute[] ATTRIBUTES = SongAttribute.values();
+
+    /**
+     * One key of the order of the results.
+     */
+    public static class Ordering {
+        public final SongAttribute attribute;
+        public final boolean ascending;
+
+        public Ordering(SongAttribute attribute, boolean ascending) {
+            if (attribute == null) {
+                throw new NullPointerException("attribute");
+            }
+            this.attribute = attribute;
+            this.ascending = ascending;
+        }
+    }
+
+    private final int[] lows = new int[ATTRIBUTES.length];
+    private final int[] highs = new int[ATTRIBUTES.length];
+    private final boolean[] constrained = new boolean[ATTRIBUTES.length];
+    private List<String> genreWords = null;
+    // whether each genres string seen by matchesGenres() has every genre word
+    private final Map<String, Boolean> genresMatches = new HashMap<>();
+    private final List<Ordering> orderings = new ArrayList<>();
+    private int offset = 0;
+    private int limit = Integer.MAX_VALUE;
+    private List<SongAttribute> projection = List.of();
+
+    /**
+     * Creates a query for every song, in order of BPM, showing titles only.
+     */
+    public SongQuery() {
+        Arrays.fill(lows, Integer.MIN_VALUE);
+        Arrays.fill(highs, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Keeps only songs whose attribute is between low and high (both
+     * inclusive). Constraining an attribute twice keeps the songs that are
+     * in both ranges.
+     * @param attribute is the attribute to constrain
+     * @param low is the smallest value to keep
+     * @param high is the largest value to keep
+     * @return this query
+     */
+    public SongQuery where(SongAttribute attribute, int low, int high) {
+        int a = attribute.ordinal();
+        lows[a] = Math.max(lows[a], low);
+        highs[a] = Math.min(highs[a], high);
+        constrained[a] = true;
+        return this;
+    }
+
+    /**
+     * Keeps only songs whose genres contain every word of genres, ignoring
+     * case, like getRange(low, high, genre). Replaces earlier genre words.
+     * @param genres is one or more genre words, any genre when it has no words
+     * @return this query
+     */
+    public SongQuery whereGenre(String genres) {
+        String[] words = BitmapIndex.splitGenres(genres);
+        this.genreWords = words.length == 0 ? null : List.of(words);
+        genresMatches.clear();
+        return this;
+    }
+
+    /**
+     * Orders the results by attribute, after the orderings added before it.
+     * Songs that all orderings rank the same stay in order of BPM.
+     * @param attribute is the attribute to order by
+     * @param ascending is true for the smallest values first, false for the largest
+     * @return this query
+     */
+    public SongQuery orderBy(SongAttribute attribute, boolean ascending) {
+        orderings.add(new Ordering(attribute, ascending));
+        return this;
+    }
+
+    /**
+     * Skips the first offset results.
+     * @param offset is the number of results to skip
+     * @return this query
+     * @throws IllegalArgumentException when offset is negative
+     */
+    public SongQuery offset(int offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset cannot be negative: " + offset);
+        }
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Returns at most limit results.
+     * @param limit is the most results to return
+     * @return this query
+     * @throws IllegalArgumentException when limit is negative
+     */
+    public SongQuery limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit cannot be negative: " + limit);
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Shows the values of attributes before each title, in the form
+     * "value, value: title" like topK(), or only the title when attributes
+     * is empty. Replaces the attributes selected before.
+     * @param attributes are the attributes to show
+     * @return this query
+     */
+    public SongQuery select(SongAttribute... attributes) {
+        this.projection = List.of(attributes);
+        return this;
+    }
+
+    /**
+     * @return true when where() has constrained attribute
+     */
+    public boolean isConstrained(SongAttribute attribute) {
+        return constrained[attribute.ordinal()];
+    }
+
+    /**
+     * @return the smallest value of attribute to keep
+     */
+    public int low(SongAttribute attribute) {
+        return lows[attribute.ordinal()];
+    }
+
+    /**
+     * @return the largest value of attribute to keep
+     */
+    public int high(SongAttribute attribute) {
+        return highs[attribute.ordinal()];
+    }
+
+    /**
+     * @return the genre words that kept songs contain, null for any genre
+     */
+    public String getGenres() {
+        return genreWords == null ? null : String.join(" ", genreWords);
+    }
+
+    /**
+     * @return the orderings of the results, the first one first
+     */
+    public List<Ordering> orderings() {
+        return Collections.unmodifiableList(orderings);
+    }
+
+    /**
+     * @return the comparator of the orderings, null when there are none
+     */
+    public Comparator<SongInterface> comparator() {
+        Comparator<SongInterface> comparator = null;
+        for (Ordering ordering : orderings) {
+            Comparator<SongInterface> next = Comparator.comparingInt(ordering.attribute::of);
+            if (!ordering.ascending) {
+                next = next.reversed();
+            }
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        return comparator;
+    }
+
+    /**
+     * @return the number of results to skip
+     */
+    public int offset() {
+        return offset;
+    }
+
+    /**
+     * @return the most results to return, Integer.MAX_VALUE for no limit
+     */
+    public int limit() {
+        return limit;
+    }
+
+    /**
+     * @return the number of results before the end of the page, offset + limit
+     *     but at most Integer.MAX_VALUE
+     */
+    public int end() {
+        return (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+    }
+
+    /**
+     * @param song is the song to check
+     * @return true when song passes every range and contains every genre word
+     */
+    public boolean matches(SongInterface song) {
+        for (SongAttribute attribute : ATTRIBUTES) {
+            int a = attribute.ordinal();
+            if (constrained[a]) {
+                int value = attribute.of(song);
+                if (value < lows[a] || value > highs[a]) {
+                    return false;
+                }
+            }
+        }
+        return matchesGenres(song);
+    }
+
+    /**
+     * Checks only the genre words. Songs share few distinct genres strings,
+     * so each string is split and checked once, and later songs with the same
+     * string are answered from a map.
+     * @param song is the song to check
+     * @return true when the genres of song contain every genre word
+     */
+    public boolean matchesGenres(SongInterface song) {
+        if (genreWords == null) {
+            return true;
+        }
+        return genresMatches.computeIfAbsent(song.getGenres(),
+                genres -> Arrays.asList(BitmapIndex.splitGenres(genres)).containsAll(genreWords));
+    }
+
+    /**
+     * @param song is a result of this query
+     * @return the selected values of song and its title, as described by select()
+     */
+    public String project(SongInterface song) {
+        if (projection.isEmpty()) {
+            return song.getTitle();
+        }
+        StringBuilder builder = new StringBuilder();
+        for (SongAttribute attribute : projection) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(attribute.of(song));
+        }
+        return builder.append(": ").append(song.getTitle()).toString();
+    }
+}
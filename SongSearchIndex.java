@@ -0,0 +1,253 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Word search over the titles and artists of a fixed list of songs. Titles
+ * and artists are split into lower case words, and every song gets a number,
+ * its position in the list. The index keeps:
+ *
+ * - an inverted index from each word to the sorted numbers of the songs that
+ *   contain it, so a search for whole words intersects a few posting lists
+ *   instead of comparing every title, and
+ * - a trie of the words whose nodes have their children in sorted arrays, and
+ *   also keep the numbers of the first SUGGESTIONS songs with a word that
+ *   starts with the node's prefix. A typeahead lookup for one word prefix so
+ *   walks one node per character and reads the songs off the last one, which
+ *   does not depend on the number of songs.
+ *
+ * The songs are expected in their natural order, so that matches come out
+ * sorted by BPM like the song tree.
+ */
+public class SongSearchIndex {
+
+    // the most songs each trie node keeps for typeahead lookups
+    public static final int SUGGESTIONS = 16;
+
+    /**
+     * A node of the trie, for the prefix spelled by the path from the root.
+     */
+    private static final class Node {
+        private char[] labels = new char[0]; // sorted first characters of the children
+        private Node[] children = new Node[0];
+        private int[] first = new int[SUGGESTIONS]; // first songs with a word with this prefix
+        private int firstCount = 0;
+        private String word = null; // the word that ends here, null if none does
+
+        private Node child(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private Node addChild(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            if (index >= 0) {
+                return children[index];
+            }
+            index = -index - 1;
+            labels = Arrays.copyOf(labels, labels.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            System.arraycopy(labels, index, labels, index + 1, labels.length - index - 1);
+            System.arraycopy(children, index, children, index + 1, children.length - index - 1);
+            labels[index] = label;
+            children[index] = new Node();
+            return children[index];
+        }
+    }
+
+    private final SongInterface[] songs;
+    private final String[][] words; // the distinct words of each song
+    private final Map<String, int[]> postings = new HashMap<>();
+    private final Node root = new Node();
+
+    /**
+     * Builds the index for songs, in time linear in the length of their titles and artists.
+     * @param songs are the songs to index, in their natural order
+     */
+    public SongSearchIndex(Collection<? extends SongInterface> songs) {
+        this.songs = songs.toArray(new SongInterface[0]);
+        this.words = new String[this.songs.length][];
+        Map<String, List<Integer>> lists = new HashMap<>();
+        for (int song = 0; song < this.songs.length; song++) {
+            words[song] = Arrays.stream(split(this.songs[song].getTitle() + " " + this.songs[song].getArtist()))
+                    .distinct().toArray(String[]::new);
+            for (String word : words[song]) {
+                lists.computeIfAbsent(word, key -> new ArrayList<>()).add(song);
+                insert(word, song);
+            }
+        }
+        for (Map.Entry<String, List<Integer>> entry : lists.entrySet()) {
+            postings.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    /**
+     * Adds song to the nodes on the path of word, creating the missing ones.
+     * Songs are added in increasing order, so each node's first songs stay sorted.
+     */
+    private void insert(String word, int song) {
+        Node node = root;
+        for (int i = 0; i < word.length(); i++) {
+            node = node.addChild(word.charAt(i));
+            if (node.firstCount < SUGGESTIONS && (node.firstCount == 0 || node.first[node.firstCount - 1] != song)) {
+                node.first[node.firstCount++] = song;
+            }
+        }
+        node.word = word;
+    }
+
+    /**
+     * Splits text into lower case words of letters and digits. Apostrophes
+     * are dropped, so that "Don't" is the single word "dont".
+     * @param text is the text to split
+     * @return the words of text, in order
+     */
+    public static String[] split(String text) {
+        String lower = text.toLowerCase(Locale.ROOT).replace("'", "").replace("\u2019", "");
+        return Arrays.stream(lower.split("[^\\p{L}\\p{N}]+")).filter(word -> !word.isEmpty())
+                .toArray(String[]::new);
+    }
+
+    /**
+     * @return the number of indexed songs
+     */
+    public int size() {
+        return songs.length;
+    }
+
+    /**
+     * Finds the songs whose title or artist contains every word of query. The
+     * last word of query only has to be the beginning of a word, so that the
+     * query can be typed one character at a time.
+     * @param query is the words to search for, in any case
+     * @param limit is the most songs to return
+     * @return the first limit matching songs in their natural order, or no songs
+     *     when query has no words
+     */
+    public List<SongInterface> search(String query, int limit) {
+        String[] queryWords = split(query);
+        List<SongInterface> result = new ArrayList<>();
+        if (queryWords.length == 0 || limit <= 0) {
+            return result;
+        }
+        String prefix = queryWords[queryWords.length - 1];
+        Node node = find(prefix);
+        if (node == null) {
+            return result;
+        }
+        if (queryWords.length == 1 && (limit <= node.firstCount || node.firstCount < SUGGESTIONS)) {
+            // The node already holds the first (or all) songs with a word with this prefix
+            for (int i = 0; i < Math.min(limit, node.firstCount); i++) {
+                result.add(songs[node.first[i]]);
+            }
+            return result;
+        }
+
+        int[] candidates = queryWords.length == 1 ? withPrefix(node) : withWords(queryWords);
+        for (int song : candidates) {
+            if (result.size() == limit) {
+                break;
+            }
+            if (queryWords.length == 1 || hasWordWithPrefix(song, prefix)) {
+                result.add(songs[song]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the trie node for prefix, or null when no word starts with it
+     */
+    private Node find(String prefix) {
+        Node node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.child(prefix.charAt(i));
+        }
+        return node;
+    }
+
+    /**
+     * @return the sorted songs with any word of the subtree of node
+     */
+    private int[] withPrefix(Node node) {
+        List<Node> stack = new ArrayList<>(List.of(node));
+        int[] result = new int[0];
+        while (!stack.isEmpty()) {
+            Node next = stack.remove(stack.size() - 1);
+            if (next.word != null) {
+                result = union(result, postings.get(next.word));
+            }
+            stack.addAll(Arrays.asList(next.children));
+        }
+        return result;
+    }
+
+    /**
+     * Intersects the posting lists of every word of query but the last, from
+     * the shortest list up, so the work is bounded by the rarest word.
+     * @return the sorted songs that contain each of these words
+     */
+    private int[] withWords(String[] query) {
+        int[][] lists = new int[query.length - 1][];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = postings.get(query[i]);
+            if (lists[i] == null) {
+                return new int[0];
+            }
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+        int[] result = lists[0];
+        for (int i = 1; i < lists.length && result.length > 0; i++) {
+            result = intersect(result, lists[i]);
+        }
+        return result;
+    }
+
+    private boolean hasWordWithPrefix(int song, String prefix) {
+        for (String word : words[song]) {
+            if (word.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                result[count++] = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                result[count++] = b[j++];
+            } else {
+                result[count++] = a[i++];
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
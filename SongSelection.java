@@ -0,0 +1,77 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The songs of one BPM range, of every year, kept in BPM order and indexed
+ * by year. The index is an array of the songs' positions sorted by year, so
+ * the k songs of a year or older are a prefix of it that a binary search
+ * finds. Tightening or loosening a year filter so costs O(log n + k log k):
+ * finding the prefix, and putting its k positions back into BPM order.
+ */
+public class SongSelection {
+
+    private final SongInterface[] songs; // in BPM order
+    private final int[] byYear; // positions in songs, sorted by year and then by position
+    private final int[] years; // the year of the song at each position of byYear
+
+    /**
+     * Indexes songs by year in O(n log n) time.
+     * @param songs are the songs of the selection, in BPM order
+     */
+    public SongSelection(List<? extends SongInterface> songs) {
+        this.songs = songs.toArray(new SongInterface[0]);
+        // Packs each year above its position, so sorting longs sorts by both
+        long[] keys = new long[this.songs.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = ((long) this.songs[i].getYear() << 32) | i;
+        }
+        Arrays.sort(keys);
+        this.byYear = new int[keys.length];
+        this.years = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            byYear[i] = (int) keys[i];
+            years[i] = (int) (keys[i] >> 32);
+        }
+    }
+
+    /**
+     * @return the number of songs in the selection
+     */
+    public int size() {
+        return songs.length;
+    }
+
+    /**
+     * Counts the songs of maxYear or older by binary search.
+     * @param maxYear is the latest year of the counted songs
+     * @return the number of these songs
+     */
+    public int countUpToYear(int maxYear) {
+        int low = 0;
+        int high = years.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (years[middle] <= maxYear) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param maxYear is the latest year of the returned songs
+     * @return the songs of maxYear or older, in BPM order
+     */
+    public List<SongInterface> upToYear(int maxYear) {
+        int[] positions = Arrays.copyOf(byYear, countUpToYear(maxYear));
+        Arrays.sort(positions);
+        List<SongInterface> result = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            result.add(songs[position]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,98 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Count, sum, minimum and maximum of every SongAttribute over a group of
+ * songs. Statistics of two disjoint groups can be merged in constant time,
+ * which is what lets BPMSegmentTree answer a range from a few precomputed
+ * groups.
+ */
+public class SongStatistics {
+
+    private static final SongAttribute[] ATTRIBUTES = SongAttribute.values();
+
+    private int count = 0;
+    private final long[] sums = new long[ATTRIBUTES.length];
+    private final int[] minimums = new int[ATTRIBUTES.length];
+    private final int[] maximums = new int[ATTRIBUTES.length];
+
+    /**
+     * Creates the statistics of no songs.
+     */
+    public SongStatistics() {
+        Arrays.fill(minimums, Integer.MAX_VALUE);
+        Arrays.fill(maximums, Integer.MIN_VALUE);
+    }
+
+    /**
+     * Adds song to the group these statistics describe.
+     * @param song is the song to add
+     */
+    public void add(SongInterface song) {
+        count++;
+        for (SongAttribute attribute : ATTRIBUTES) {
+            int value = attribute.of(song);
+            int a = attribute.ordinal();
+            sums[a] += value;
+            minimums[a] = Math.min(minimums[a], value);
+            maximums[a] = Math.max(maximums[a], value);
+        }
+    }
+
+    /**
+     * Adds every song of other to the group these statistics describe. The
+     * groups are expected to be disjoint.
+     * @param other are the statistics of the songs to add
+     */
+    public void merge(SongStatistics other) {
+        count += other.count;
+        for (int a = 0; a < ATTRIBUTES.length; a++) {
+            sums[a] += other.sums[a];
+            minimums[a] = Math.min(minimums[a], other.minimums[a]);
+            maximums[a] = Math.max(maximums[a], other.maximums[a]);
+        }
+    }
+
+    /**
+     * @return the number of songs
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @return the sum of attribute over the songs, 0 when there are none
+     */
+    public long sum(SongAttribute attribute) {
+        return sums[attribute.ordinal()];
+    }
+
+    /**
+     * @return the average of attribute over the songs, NaN when there are none
+     */
+    public double average(SongAttribute attribute) {
+        return count == 0 ? Double.NaN : (double) sums[attribute.ordinal()] / count;
+    }
+
+    /**
+     * @return the smallest value of attribute among the songs
+     * @throws NoSuchElementException when there are no songs
+     */
+    public int min(SongAttribute attribute) {
+        if (count == 0) {
+            throw new NoSuchElementException("No songs to take the minimum " + attribute + " of");
+        }
+        return minimums[attribute.ordinal()];
+    }
+
+    /**
+     * @return the largest value of attribute among the songs
+     * @throws NoSuchElementException when there are no songs
+     */
+    public int max(SongAttribute attribute) {
+        if (count == 0) {
+            throw new NoSuchElementException("No songs to take the maximum " + attribute + " of");
+        }
+        return maximums[attribute.ordinal()];
+    }
+}
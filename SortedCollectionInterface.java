@@ -5,6 +5,9 @@ public interface SortedCollectionInterface<T extends Comparable<T>> {
 
     public boolean contains(Comparable<T> data);
 
+    public boolean remove(Comparable<T> data)
+	throws NullPointerException;
+
     public boolean isEmpty();
     
     public int size();
@@ -0,0 +1,131 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps the k best values offered to it in one pass, by a ranking in which
+ * smaller values are better. The values are kept in a binary max-heap of at
+ * most k entries with the worst kept value on top, so each offer costs
+ * O(log k) and the whole pass O(n log k) time and O(k) memory, instead of
+ * sorting all n values.
+ *
+ * Ties are stable: of values that rank the same, the ones offered first are
+ * kept and listed first, so offering values in BPM order breaks ties by BPM.
+ */
+public class TopK<T> {
+
+    private final int k;
+    private final Comparator<? super T> ranking;
+    private final Object[] values;
+    private final long[] sequences; // when each kept value was offered
+    private int size = 0;
+    private long offered = 0;
+
+    /**
+     * Creates an empty top-k.
+     * @param k is the most values to keep
+     * @param ranking orders the values from best to worst
+     * @throws IllegalArgumentException when k is negative
+     */
+    public TopK(int k, Comparator<? super T> ranking) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k cannot be negative: " + k);
+        }
+        this.k = k;
+        this.ranking = ranking;
+        this.values = new Object[k];
+        this.sequences = new long[k];
+    }
+
+    /**
+     * Keeps value when fewer than k values are kept, or when it ranks
+     * strictly better than the worst kept value, which it then replaces.
+     * @param value is the value to offer
+     */
+    public void offer(T value) {
+        long sequence = offered++;
+        if (size < k) {
+            values[size] = value;
+            sequences[size] = sequence;
+            siftUp(size++);
+        } else if (k > 0 && ranking.compare(value, get(0)) < 0) {
+            values[0] = value;
+            sequences[0] = sequence;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * @return the number of values kept
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the kept values from best to worst, ties in the order they were offered
+     */
+    public List<T> toList() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, this::compareWorse);
+        List<T> result = new ArrayList<>(size);
+        for (int index : order) {
+            result.add(get(index));
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T get(int index) {
+        return (T) values[index];
+    }
+
+    /**
+     * @return a positive number when the entry at a is worse than the entry at
+     *     b: it ranks worse, or ranks the same and was offered later
+     */
+    private int compareWorse(int a, int b) {
+        int compare = ranking.compare(get(a), get(b));
+        return compare != 0 ? compare : Long.compare(sequences[a], sequences[b]);
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (compareWorse(index, parent) <= 0) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int worst = index;
+            for (int child = 2 * index + 1; child <= 2 * index + 2 && child < size; child++) {
+                if (compareWorse(child, worst) > 0) {
+                    worst = child;
+                }
+            }
+            if (worst == index) {
+                return;
+            }
+            swap(index, worst);
+            index = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        Object value = values[a];
+        values[a] = values[b];
+        values[b] = value;
+        long sequence = sequences[a];
+        sequences[a] = sequences[b];
+        sequences[b] = sequence;
+    }
+}